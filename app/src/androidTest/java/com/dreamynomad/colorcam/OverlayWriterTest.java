@@ -0,0 +1,96 @@
+package com.dreamynomad.colorcam;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Color;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class OverlayWriterTest {
+
+	private static final int BACKGROUND = Color.rgb(128, 128, 128);
+
+	@Test
+	public void paletteIsDrawnAcrossStrips() throws IOException {
+		// the palette is centered on the first row of the second strip
+		final Bitmap overlay = write(200, 600, new int[]{Color.RED, Color.BLUE}, 256f / 600);
+
+		assertEquals(200, overlay.getWidth());
+		assertEquals(600, overlay.getHeight());
+
+		// centers of the two circles, from the geometry in OverlayWriter
+		assertClose(Color.RED, overlay.getPixel(49, 256));
+		assertClose(Color.RED, overlay.getPixel(49, 252));
+		assertClose(Color.BLUE, overlay.getPixel(148, 256));
+		assertClose(Color.BLUE, overlay.getPixel(148, 252));
+
+		assertClose(BACKGROUND, overlay.getPixel(5, 5));
+		assertClose(BACKGROUND, overlay.getPixel(100, 256));
+		assertClose(BACKGROUND, overlay.getPixel(195, 595));
+	}
+
+	@Test
+	public void oddSizesAreKept() throws IOException {
+		final Bitmap overlay = write(201, 333, new int[]{Color.GREEN}, 0.9f);
+
+		assertEquals(201, overlay.getWidth());
+		assertEquals(333, overlay.getHeight());
+		assertClose(Color.GREEN, overlay.getPixel(100, 300));
+		assertClose(BACKGROUND, overlay.getPixel(200, 332));
+	}
+
+	@Test
+	public void imageIsCopiedWithoutAPalette() throws IOException {
+		final Bitmap overlay = write(64, 300, new int[0], 0.5f);
+
+		assertEquals(64, overlay.getWidth());
+		assertEquals(300, overlay.getHeight());
+		assertClose(BACKGROUND, overlay.getPixel(32, 150));
+	}
+
+	private static Bitmap write(int width, int height, int[] colors, float fractionY)
+			throws IOException {
+		final Bitmap source = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		source.eraseColor(BACKGROUND);
+
+		final ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+		source.compress(Bitmap.CompressFormat.JPEG, 100, jpeg);
+		source.recycle();
+
+		final BitmapRegionDecoder decoder =
+				BitmapRegionDecoder.newInstance(jpeg.toByteArray(), 0, jpeg.size(), false);
+		final ByteArrayOutputStream overlay = new ByteArrayOutputStream();
+
+		try {
+			assertTrue(new OverlayWriter(decoder, colors, fractionY).write(overlay, 95));
+		} finally {
+			decoder.recycle();
+		}
+
+		final Bitmap bitmap =
+				BitmapFactory.decodeByteArray(overlay.toByteArray(), 0, overlay.size());
+		assertNotNull(bitmap);
+		return bitmap;
+	}
+
+	private static void assertClose(int expected, int actual) {
+		final int difference = Math.max(
+				Math.abs(Color.red(expected) - Color.red(actual)), Math.max(
+						Math.abs(Color.green(expected) - Color.green(actual)),
+						Math.abs(Color.blue(expected) - Color.blue(actual))));
+
+		assertTrue(String.format("expected #%06X but was #%06X", expected & 0xFFFFFF,
+				actual & 0xFFFFFF), difference <= 24);
+	}
+}
@@ -0,0 +1,201 @@
+package com.dreamynomad.colorcam.layoutmanager;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class SpanSizeLookupTest {
+
+	@Test
+	public void lookupsMatchAWalkFromTheStart() {
+		final Random random = new Random(3);
+
+		for (int test = 0; test < 500; test++) {
+			final int spanCount = 1 + random.nextInt(6);
+			final int uniformSize = 1 + random.nextInt(spanCount);
+			final CountingLookup lookup = new CountingLookup(1 + random.nextInt(400), uniformSize);
+			lookup.setSpanIndexCacheEnabled(random.nextBoolean());
+
+			// mostly uniform, so that detection is exercised as well as the checkpoints
+			if (random.nextBoolean()) {
+				lookup.mSizes[random.nextInt(lookup.mSizes.length)] = 1 + random.nextInt(spanCount);
+			}
+
+			lookup.detectUniformSpanSize(lookup.mSizes.length);
+
+			for (int change = 0; change < 5; change++) {
+				changeRandomly(lookup, random, spanCount, uniformSize);
+
+				if (random.nextBoolean()) {
+					lookup.detectUniformSpanSize(lookup.mSizes.length);
+				}
+
+				for (int i = 0; i < 40; i++) {
+					final int position = random.nextInt(lookup.mSizes.length);
+					final int[] expected = walk(lookup.mSizes, position, spanCount);
+					final String message = "test " + test + ", position " + position;
+
+					assertEquals(message, expected[0], lookup.getSpanIndex(position, spanCount));
+					assertEquals(message, expected[0],
+							lookup.getCachedSpanIndex(position, spanCount));
+					assertEquals(message, expected[1],
+							lookup.getSpanGroupIndex(position, spanCount));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void uniformSizeIsDetectedOnce() {
+		final CountingLookup lookup = new CountingLookup(100000, 1);
+
+		lookup.detectUniformSpanSize(100000);
+		assertEquals(100000, lookup.mCalls);
+
+		lookup.mCalls = 0;
+		assertEquals(24999, lookup.getSpanGroupIndex(99999, 4));
+		assertEquals(3, lookup.getSpanIndex(99999, 4));
+		assertEquals(0, lookup.mCalls);
+
+		// appended items are the only ones checked again
+		lookup.append(10, 1);
+		lookup.invalidateSpanIndexCache(100000);
+		lookup.detectUniformSpanSize(100010);
+		assertEquals(10, lookup.mCalls);
+	}
+
+	@Test
+	public void detectionStopsAtADifferentSize() {
+		final CountingLookup lookup = new CountingLookup(1000, 1);
+		lookup.mSizes[500] = 2;
+
+		lookup.detectUniformSpanSize(1000);
+		assertEquals(501, lookup.mCalls);
+
+		// still mixed, so nothing is checked again
+		lookup.mCalls = 0;
+		lookup.detectUniformSpanSize(1000);
+		assertEquals(0, lookup.mCalls);
+
+		// before the different size, positions are calculated directly
+		assertEquals(124, lookup.getSpanGroupIndex(499, 4));
+		assertEquals(0, lookup.mCalls);
+
+		// the item no longer differs
+		lookup.mSizes[500] = 1;
+		lookup.invalidateSpanIndexCache(500);
+		lookup.detectUniformSpanSize(1000);
+		assertEquals(500, lookup.mCalls);
+	}
+
+	@Test
+	public void invalidationKeepsCheckpointsBeforeThePosition() {
+		final CountingLookup lookup = new CountingLookup(10000, 1);
+		lookup.mSizes[0] = 2;
+
+		lookup.getSpanGroupIndex(9999, 3);
+		assertTrue(lookup.mCalls >= 9999);
+
+		lookup.mCalls = 0;
+		lookup.mSizes[9000] = 3;
+		lookup.invalidateSpanIndexCache(9000);
+
+		final int[] expected = walk(lookup.mSizes, 9999, 3);
+		assertEquals(expected[1], lookup.getSpanGroupIndex(9999, 3));
+		assertTrue("walked " + lookup.mCalls + " items", lookup.mCalls < 1200);
+	}
+
+	/**
+	 * Adds, changes or removes items and invalidates the lookup from the first changed one.
+	 */
+	private static void changeRandomly(CountingLookup lookup, Random random, int spanCount,
+	                                   int uniformSize) {
+		final int size = lookup.mSizes.length;
+
+		switch (random.nextInt(3)) {
+			case 0:
+				lookup.append(1 + random.nextInt(50),
+						random.nextInt(4) == 0 ? 1 + random.nextInt(spanCount) : uniformSize);
+				lookup.invalidateSpanIndexCache(size);
+				break;
+			case 1: {
+				final int position = random.nextInt(size);
+				lookup.mSizes[position] =
+						random.nextBoolean() ? uniformSize : 1 + random.nextInt(spanCount);
+				lookup.invalidateSpanIndexCache(position);
+				break;
+			}
+			default: {
+				if (size > 1) {
+					final int position = random.nextInt(size);
+					final int[] sizes = new int[size - 1];
+					System.arraycopy(lookup.mSizes, 0, sizes, 0, position);
+					System.arraycopy(lookup.mSizes, position + 1, sizes, position,
+							size - 1 - position);
+					lookup.mSizes = sizes;
+					lookup.invalidateSpanIndexCache(position);
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return the span index and span group index of a position, placing every item from the
+	 * first one
+	 */
+	private static int[] walk(int[] sizes, int position, int spanCount) {
+		int span = 0;
+		int group = 0;
+
+		for (int i = 0; i < position; i++) {
+			span += sizes[i];
+
+			if (span == spanCount) {
+				span = 0;
+				group++;
+			} else if (span > spanCount) {
+				span = sizes[i];
+				group++;
+			}
+		}
+
+		if (span + sizes[position] > spanCount) {
+			span = 0;
+			group++;
+		}
+
+		return new int[]{span, group};
+	}
+
+	private static class CountingLookup extends FastGridLayoutManager.SpanSizeLookup {
+
+		private int[] mSizes;
+		private int mCalls;
+
+		private CountingLookup(int count, int size) {
+			mSizes = new int[count];
+			Arrays.fill(mSizes, size);
+		}
+
+		private void append(int count, int size) {
+			final int start = mSizes.length;
+			mSizes = Arrays.copyOf(mSizes, start + count);
+			Arrays.fill(mSizes, start, mSizes.length, size);
+		}
+
+		@Override
+		public int getSpanSize(int position) {
+			mCalls++;
+			return mSizes[position];
+		}
+	}
+}
@@ -3,6 +3,10 @@ package com.dreamynomad.colorcam;
 import android.app.Application;
 import android.content.Context;
 
+import com.dreamynomad.colorcam.cache.PaletteDiskCache;
+import com.dreamynomad.colorcam.index.MediaStoreObserver;
+import com.dreamynomad.colorcam.index.PaletteIndexService;
+
 /**
  * Created by Eric on 11/28/2014.
  */
@@ -15,6 +19,11 @@ public class App extends Application {
 		super.onCreate();
 
 		sContext = getApplicationContext();
+
+		PaletteDiskCache.preload();
+		GalleryUtils.preloadMaxBitmapSize();
+		PaletteIndexService.startIfCharging(this);
+		MediaStoreObserver.register(this);
 	}
 
 	public static Context getContext() {
@@ -0,0 +1,60 @@
+package com.dreamynomad.colorcam;
+
+import android.database.Cursor;
+import android.provider.MediaStore;
+
+/**
+ * Reads images straight from a {@link android.provider.MediaStore} cursor, so the gallery can be
+ * shown as soon as the query returns. Rows are only read when they are bound, from the window
+ * that the cursor keeps in memory.
+ * <p/>
+ * A cursor keeps its current position, so it must only be read on one thread; the gallery's
+ * cursor is owned by its loader and read on the main thread.
+ */
+public class CursorMediaList implements MediaList {
+
+	/**
+	 * Columns that the cursor must contain.
+	 */
+	public static final String[] PROJECTION = {MediaStore.Images.Media._ID,
+			MediaStore.Images.Media.DATA, MediaStore.Images.Media.DATE_MODIFIED};
+
+	private final Cursor mCursor;
+
+	private final int mIdIdx;
+	private final int mDataIdx;
+	private final int mDateModifiedIdx;
+
+	public CursorMediaList(Cursor cursor) {
+		mCursor = cursor;
+
+		mIdIdx = cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
+		mDataIdx = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
+		mDateModifiedIdx = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_MODIFIED);
+	}
+
+	@Override
+	public int size() {
+		return mCursor.getCount();
+	}
+
+	@Override
+	public long getId(int position) {
+		return moveToPosition(position) ? mCursor.getLong(mIdIdx) : -1;
+	}
+
+	@Override
+	public String getPath(int position) {
+		return moveToPosition(position) ? mCursor.getString(mDataIdx) : null;
+	}
+
+	@Override
+	public long getDateModified(int position) {
+		return moveToPosition(position) ? mCursor.getLong(mDateModifiedIdx) : 0;
+	}
+
+	private boolean moveToPosition(int position) {
+		// binding reads several columns of the same row
+		return mCursor.getPosition() == position || mCursor.moveToPosition(position);
+	}
+}
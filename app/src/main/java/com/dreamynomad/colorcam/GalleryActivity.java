@@ -3,46 +3,128 @@ package com.dreamynomad.colorcam;
 import android.app.Activity;
 import android.app.ActivityOptions;
 import android.app.LoaderManager;
+import android.content.ContentResolver;
 import android.content.CursorLoader;
 import android.content.Intent;
 import android.content.Loader;
 import android.content.res.Configuration;
 import android.database.Cursor;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.provider.MediaStore;
+import android.support.v4.content.ContextCompat;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.util.Log;
 import android.util.Pair;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.Window;
+import android.widget.Toast;
 
+import com.dreamynomad.colorcam.cache.BitmapPool;
+import com.dreamynomad.colorcam.cache.PaletteDiskCache;
+import com.dreamynomad.colorcam.executor.DecodeExecutor;
 import com.dreamynomad.colorcam.layoutmanager.FastGridLayoutManager;
+import com.dreamynomad.colorcam.layoutmanager.FastScroller;
+import com.dreamynomad.colorcam.palette.ColorIndex;
+import com.dreamynomad.colorcam.palette.HueOrder;
+import com.dreamynomad.colorcam.palette.PackedPalette;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 
 /**
  * Allows user to browse images on the device.
  */
 public class GalleryActivity extends Activity
-		implements LoaderManager.LoaderCallbacks<Cursor>, GalleryAdapter.OnItemClickListener {
+		implements LoaderManager.LoaderCallbacks<Cursor>, GalleryAdapter.OnItemClickListener,
+		GalleryAdapter.OnColorLongClickListener {
 
-	private static final String STATE_MEDIA_ITEMS = "media_items";
+	private static final String TAG = GalleryActivity.class.getSimpleName();
+
+	private static final boolean DEBUG = false;
+
+	private static final String STATE_SEARCH_COLOR = "search_color";
+	private static final String STATE_SORT_BY_HUE = "sort_by_hue";
+	private static final String STATE_QUERY_TOKEN = "query_token";
+	private static final String STATE_ANCHOR_POSITION = "anchor_position";
+	private static final String STATE_ANCHOR_ID = "anchor_id";
+	private static final String STATE_ANCHOR_OFFSET = "anchor_offset";
+
+	/**
+	 * Largest difference in L*a*b* between a searched color and a matching palette color.
+	 */
+	private static final float SEARCH_DISTANCE = 12f;
 
 	private static final int GALLERY_LOADER = 1;
 
+	private static final String SORT_ORDER = MediaStore.Images.Media.DATE_TAKEN + " DESC";
+
 	private static final int RESULT_GALLERY = 100;
 	private static final int RESULT_GALLERY_KITKAT = 101;
 
 	private RecyclerView mGallery;
 	private GalleryAdapter mAdapter;
+	private ThumbnailPrefetcher mPrefetcher;
 	private RecyclerView.LayoutManager mLayoutManager;
 
-	private ArrayList<MediaItem> mMediaItems;
+	private Cursor mCursor;
+	private MediaList mMediaList;
+
+	/**
+	 * Incremented whenever the loader delivers a new cursor.
+	 */
+	private int mGeneration;
+
+	/**
+	 * Copy of the images of the current cursor that background tasks can read, or null until
+	 * one of them needs it.
+	 */
+	private MediaSnapshot mSnapshot;
+
+	/**
+	 * Positions of the images of the snapshot, which are those of the cursor, or null until a
+	 * background task has built them.
+	 */
+	private MediaPositions mSnapshotPositions;
+
+	// color search, which shows the matching items instead of all of them
+	private boolean mSearching;
+	private int mSearchColor;
+	private ColorSearchTask mSearchTask;
+	private ColorIndex mColorIndex;
+
+	// rainbow order of all items, instead of the date they were taken
+	private boolean mSortByHue;
+	private HueSortTask mSortTask;
+
+	// what the previous instance showed, until the loader delivers its cursor again
+	private Retained mRetained;
+
+	// first visible item of the previous instance, restored once the items are shown
+	private String mAnchorToken;
+	private int mAnchorPosition = RecyclerView.NO_POSITION;
+	private long mAnchorId;
+	private int mAnchorOffset;
+
+	/**
+	 * Kept across configuration changes, so that the next instance shows the same items without
+	 * reading or ordering them again.
+	 */
+	private static class Retained {
+		private Cursor mCursor;
+		private MediaSnapshot mSnapshot;
+		private MediaPositions mSnapshotPositions;
+		private ColorIndex mColorIndex;
+
+		/**
+		 * Search results or sorted items, or null if the cursor was shown.
+		 */
+		private MediaList mShown;
+	}
 
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -64,20 +146,69 @@ public class GalleryActivity extends Activity
 			spanCount = 2;
 		}
 
-		mLayoutManager = new FastGridLayoutManager(this, spanCount);
+		FastGridLayoutManager gridLayoutManager = new FastGridLayoutManager(this, spanCount);
+		// every item has the height of item_gallery_height
+		gridLayoutManager.setFixedItemSize(true);
+		mLayoutManager = gridLayoutManager;
 		mGallery.setLayoutManager(mLayoutManager);
 
+		// rows have a fixed height, so the thumb can jump straight to any row
+		new FastScroller(this, ContextCompat.getColor(this, R.color.grey_600))
+				.attachToRecyclerView(mGallery);
+
+		DecodeExecutor.getInstance().resetVisibleRange();
+
+		mGallery.addOnScrollListener(new RecyclerView.OnScrollListener() {
+			@Override
+			public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+				FastGridLayoutManager layoutManager = (FastGridLayoutManager) mLayoutManager;
+				int first = layoutManager.findFirstVisibleItemPosition();
+				int last = layoutManager.findLastVisibleItemPosition();
+
+				if (first != RecyclerView.NO_POSITION && last != RecyclerView.NO_POSITION) {
+					// keep a row on either side, which is bound just before it scrolls in
+					int margin = layoutManager.getSpanCount();
+					DecodeExecutor.getInstance().setVisibleRange(first - margin, last + margin);
+				}
+			}
+
+			@Override
+			public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+				if (DEBUG && newState == RecyclerView.SCROLL_STATE_IDLE) {
+					// reuse rate of thumbnail bitmaps
+					Log.d(TAG, BitmapPool.getInstance().toString());
+				}
+			}
+		});
+
 		if (savedInstanceState != null) {
-			mMediaItems = savedInstanceState.getParcelableArrayList(STATE_MEDIA_ITEMS);
+			mSortByHue = savedInstanceState.getBoolean(STATE_SORT_BY_HUE);
 
-			createAdapter();
-		} else {
-			getLoaderManager().initLoader(GALLERY_LOADER, null, this);
+			if (savedInstanceState.containsKey(STATE_SEARCH_COLOR)) {
+				mSearching = true;
+				mSearchColor = savedInstanceState.getInt(STATE_SEARCH_COLOR);
+			}
+
+			mAnchorToken = savedInstanceState.getString(STATE_QUERY_TOKEN);
+			mAnchorPosition = savedInstanceState.getInt(STATE_ANCHOR_POSITION,
+					RecyclerView.NO_POSITION);
+			mAnchorId = savedInstanceState.getLong(STATE_ANCHOR_ID);
+			mAnchorOffset = savedInstanceState.getInt(STATE_ANCHOR_OFFSET);
 		}
+
+		mRetained = (Retained) getLastNonConfigurationInstance();
+
+		// reconnects to the cursor of the previous instance after a configuration change
+		getLoaderManager().initLoader(GALLERY_LOADER, null, this);
 	}
 
 	@Override
 	public void onBackPressed() {
+		if (mSearching) {
+			clearSearch();
+			return;
+		}
+
 		super.onBackPressed();
 
 		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
@@ -87,19 +218,84 @@ public class GalleryActivity extends Activity
 
 	@Override
 	protected void onSaveInstanceState(Bundle outState) {
-		outState.putParcelableArrayList(STATE_MEDIA_ITEMS, mMediaItems);
+		// the items themselves are retained or queried again, so this stays small
+		if (mSearching) {
+			outState.putInt(STATE_SEARCH_COLOR, mSearchColor);
+		}
+		outState.putBoolean(STATE_SORT_BY_HUE, mSortByHue);
+
+		final FastGridLayoutManager layoutManager = (FastGridLayoutManager) mLayoutManager;
+		final int position = layoutManager.findFirstVisibleItemPosition();
+		final View child = layoutManager.findViewByPosition(position);
+
+		if (mMediaList != null && mAdapter != null && child != null) {
+			outState.putString(STATE_QUERY_TOKEN, getQueryToken(mMediaList));
+			outState.putInt(STATE_ANCHOR_POSITION, position);
+			outState.putLong(STATE_ANCHOR_ID, mAdapter.getMediaList().getId(position));
+			outState.putInt(STATE_ANCHOR_OFFSET,
+					layoutManager.getDecoratedTop(child) - layoutManager.getPaddingTop());
+		}
 
 		super.onSaveInstanceState(outState);
 	}
 
+	@Override
+	public Object onRetainNonConfigurationInstance() {
+		if (mCursor == null) {
+			return null;
+		}
+
+		final Retained retained = new Retained();
+		retained.mCursor = mCursor;
+		retained.mSnapshot = mSnapshot;
+		retained.mSnapshotPositions = mSnapshotPositions;
+		retained.mColorIndex = mColorIndex;
+
+		// items that are still being searched or sorted are done again
+		if (mSearchTask == null && mSortTask == null && mAdapter.getMediaList() != mMediaList) {
+			retained.mShown = mAdapter.getMediaList();
+		}
+
+		return retained;
+	}
+
+	/**
+	 * @return a token that changes whenever images are added to or removed from the list, which
+	 * only reads its first row
+	 */
+	private static String getQueryToken(MediaList mediaList) {
+		if (mediaList.size() == 0) {
+			return "0";
+		}
+
+		return mediaList.size() + "/" + mediaList.getId(0) + "/" + mediaList.getDateModified(0);
+	}
+
+	/**
+	 * Scrolls back to the first visible item of the previous instance, if the images have not
+	 * changed since.
+	 */
+	private void restoreAnchor(MediaList shown) {
+		if (mAnchorPosition == RecyclerView.NO_POSITION) {
+			return;
+		}
+
+		final int position = mAnchorPosition;
+		mAnchorPosition = RecyclerView.NO_POSITION;
+
+		if (getQueryToken(mMediaList).equals(mAnchorToken) && position < shown.size() &&
+				shown.getId(position) == mAnchorId) {
+			((FastGridLayoutManager) mLayoutManager).scrollToPositionWithOffset(position,
+					mAnchorOffset);
+		}
+	}
+
 	@Override
 	public Loader<Cursor> onCreateLoader(int id, Bundle args) {
 
 		if (id == GALLERY_LOADER) {
-			return new CursorLoader(this,
-					MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-					new String[]{MediaStore.Images.Media._ID, MediaStore.Images.Media.DATA},
-					null, null, MediaStore.Images.Media.DATE_TAKEN + " DESC");
+			return new CursorLoader(this, MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+					CursorMediaList.PROJECTION, null, null, SORT_ORDER);
 		}
 
 		return null;
@@ -107,40 +303,360 @@ public class GalleryActivity extends Activity
 
 	@Override
 	public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+		// rows are read as they are bound, so the first screen does not wait for the rest
+		mCursor = data;
+		mMediaList = new CursorMediaList(data);
+		mGeneration++;
+
+		final Retained retained = mRetained;
+		mRetained = null;
+
+		if (retained != null && retained.mCursor == data) {
+			// the same images as before the configuration change
+			mSnapshot = retained.mSnapshot;
+			mSnapshotPositions = retained.mSnapshotPositions;
+			mColorIndex = retained.mColorIndex;
+
+			if (retained.mShown != null || (!mSearching && !mSortByHue)) {
+				createAdapter(retained.mShown != null ? retained.mShown : mMediaList);
+				restoreAnchor(mAdapter.getMediaList());
+				return;
+			}
+		} else {
+			// the snapshot and index are out of date
+			mSnapshot = null;
+			mSnapshotPositions = null;
+			mColorIndex = null;
+		}
+
+		createAdapter(mMediaList);
+
+		if (mSearching) {
+			// the current items stay until the results are ready
+			search(mSearchColor);
+		} else if (mSortByHue) {
+			sortByHue();
+		} else {
+			restoreAnchor(mMediaList);
+		}
+	}
+
+	/**
+	 * Creates the adapter, or replaces its items without comparing them.
+	 * <p/>
+	 * While a search or sort is pending, the adapter keeps its items until the results are
+	 * ready, unless they are read from a cursor, which the loader closes once it has delivered
+	 * the new one.
+	 */
+	private void createAdapter(MediaList mediaList) {
+		if (mAdapter == null) {
+			mAdapter = new GalleryAdapter(mediaList);
+			mAdapter.setOnItemClickListener(this);
+			mAdapter.setOnColorLongClickListener(this);
+			mGallery.setAdapter(mAdapter);
+
+			mPrefetcher = new ThumbnailPrefetcher(mAdapter, (FastGridLayoutManager) mLayoutManager);
+			((FastGridLayoutManager) mLayoutManager).setOnScrollByListener(mPrefetcher);
+		} else if ((!mSearching && !mSortByHue) ||
+				mAdapter.getMediaList() instanceof CursorMediaList) {
+			mPrefetcher.reset();
+			// comparing the old and new cursors would read every row
+			mAdapter.update(mediaList);
+			mAdapter.notifyDataSetChanged();
+		}
+	}
+
+	@Override
+	public void onColorLongClicked(int color) {
+		search(color);
+	}
 
-		if (mMediaItems == null) {
-			mMediaItems = new ArrayList<>(data.getCount());
+	/**
+	 * Shows the items with a palette color close to a color.
+	 */
+	private void search(int color) {
+		if (mMediaList == null) {
+			return;
 		}
 
-		mMediaItems.clear();
+		if (mSearchTask != null) {
+			mSearchTask.cancel(false);
+		}
+
+		if (!mSearching) {
+			mSearching = true;
+			invalidateOptionsMenu();
+		}
 
-		while (data.moveToNext()) {
-			int idIdx = data.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
-			long id = data.getLong(idIdx);
+		mSearchColor = color;
 
-			int dataIdx = data.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
-			String path = data.getString(dataIdx);
+		// searches run one at a time, since the index is not thread-safe
+		mSearchTask = new ColorSearchTask(getContentResolver(), mGeneration,
+				mSnapshot, mSnapshotPositions, mColorIndex, color);
+		mSearchTask.execute();
+	}
 
-			mMediaItems.add(new MediaItem(id, path));
+	private void clearSearch() {
+		if (mSearchTask != null) {
+			mSearchTask.cancel(false);
+			mSearchTask = null;
 		}
 
-		createAdapter();
+		mSearching = false;
+		invalidateOptionsMenu();
+
+		showAll();
 	}
 
-	private void createAdapter() {
-		if (mAdapter == null) {
-			mAdapter = new GalleryAdapter(mMediaItems);
-			mAdapter.setOnItemClickListener(this);
-			mGallery.setAdapter(mAdapter);
+	/**
+	 * Shows all items in the current order.
+	 */
+	private void showAll() {
+		if (mSortByHue) {
+			sortByHue();
 		} else {
-			mAdapter.update(mMediaItems);
-			mAdapter.notifyDataSetChanged();
+			// the snapshot has the images of the cursor, in the same order
+			showItems(mMediaList, mSnapshotPositions);
+		}
+	}
+
+	/**
+	 * Replaces the items, moving the visible ones to their new positions if they are known.
+	 */
+	private void showItems(MediaList mediaList, MediaPositions positions) {
+		final FastGridLayoutManager layoutManager = (FastGridLayoutManager) mLayoutManager;
+
+		mPrefetcher.reset();
+		mAdapter.replace(mediaList, positions, layoutManager.findFirstVisibleItemPosition(),
+				layoutManager.findLastVisibleItemPosition());
+
+		if (mAnchorPosition != RecyclerView.NO_POSITION) {
+			restoreAnchor(mediaList);
+		} else {
+			mLayoutManager.scrollToPosition(0);
+		}
+	}
+
+	private void sortByHue() {
+		if (mMediaList == null) {
+			return;
+		}
+
+		if (mSortTask != null) {
+			mSortTask.cancel(false);
+		}
+
+		mSortTask = new HueSortTask(getContentResolver(), mGeneration, mSnapshot,
+				mSnapshotPositions);
+		mSortTask.execute();
+	}
+
+	/**
+	 * Queries the images in the same order as the gallery. Called on a background thread,
+	 * where the cursor of the loader cannot be read.
+	 *
+	 * @return the images, which are empty if the query failed
+	 */
+	private static MediaSnapshot querySnapshot(ContentResolver resolver) {
+		final Cursor cursor = resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+				CursorMediaList.PROJECTION, null, null, SORT_ORDER);
+
+		if (cursor == null) {
+			return MediaSnapshot.EMPTY;
+		}
+
+		try {
+			return MediaSnapshot.fromCursor(cursor);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * @return the palette of each item from disk, or null for items without one yet
+	 */
+	private static PackedPalette[] loadPalettes(MediaList mediaList) {
+		final PaletteDiskCache diskCache = PaletteDiskCache.getInstance();
+		final PackedPalette[] palettes = new PackedPalette[mediaList.size()];
+
+		// read from disk directly, so that the memory cache keeps the visible palettes
+		for (int i = 0; i < palettes.length; i++) {
+			palettes[i] = diskCache.get(mediaList.getId(i), mediaList.getDateModified(i));
+		}
+
+		return palettes;
+	}
+
+	/**
+	 * Keeps the first snapshot built by a background task, unless the images changed meanwhile.
+	 *
+	 * @return whether the snapshot is the one that is kept
+	 */
+	private boolean onSnapshot(MediaSnapshot snapshot, MediaPositions positions,
+	                           int generation) {
+		if (generation == mGeneration && mSnapshot == null) {
+			mSnapshot = snapshot;
+		}
+
+		if (snapshot != mSnapshot) {
+			return false;
+		}
+
+		if (mSnapshotPositions == null) {
+			mSnapshotPositions = positions;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Orders all items by the hue of their dominant color.
+	 */
+	private class HueSortTask extends AsyncTask<Void, Void, MediaList> {
+
+		private final ContentResolver mResolver;
+		private final int mGeneration;
+		private MediaSnapshot mSnapshot;
+		private MediaPositions mSnapshotPositions;
+		private MediaPositions mPositions;
+
+		private HueSortTask(ContentResolver resolver, int generation, MediaSnapshot snapshot,
+		                    MediaPositions snapshotPositions) {
+			mResolver = resolver;
+			mGeneration = generation;
+			mSnapshot = snapshot;
+			mSnapshotPositions = snapshotPositions;
+		}
+
+		@Override
+		protected MediaList doInBackground(Void... params) {
+			final long start = System.currentTimeMillis();
+
+			if (mSnapshot == null) {
+				mSnapshot = querySnapshot(mResolver);
+			}
+
+			final int[] order = HueOrder.sort(loadPalettes(mSnapshot), mSnapshot.size());
+			final MediaSnapshot sorted = mSnapshot.select(order);
+
+			// so that the items on screen are moved rather than rebound
+			mPositions = MediaPositions.of(sorted);
+			if (mSnapshotPositions == null) {
+				mSnapshotPositions = MediaPositions.of(mSnapshot);
+			}
+
+			if (DEBUG) {
+				Log.d(TAG, "Sorted " + sorted.size() + " items by hue in " +
+						(System.currentTimeMillis() - start) + " ms");
+			}
+
+			return sorted;
+		}
+
+		@Override
+		protected void onPostExecute(MediaList sorted) {
+			if (mSortTask != this) {
+				return;
+			}
+
+			mSortTask = null;
+			onSnapshot(mSnapshot, mSnapshotPositions, mGeneration);
+
+			if (mSortByHue && !mSearching) {
+				showItems(sorted, mPositions);
+			}
+		}
+	}
+
+	/**
+	 * Builds the color index if needed and searches it. Items without a palette on disk yet
+	 * are not indexed.
+	 */
+	private class ColorSearchTask extends AsyncTask<Void, Void, MediaList> {
+
+		private final ContentResolver mResolver;
+		private final int mGeneration;
+		private final int mColor;
+		private MediaSnapshot mSnapshot;
+		private MediaPositions mSnapshotPositions;
+		private MediaPositions mPositions;
+		private ColorIndex mIndex;
+
+		private ColorSearchTask(ContentResolver resolver, int generation,
+		                        MediaSnapshot snapshot, MediaPositions snapshotPositions,
+		                        ColorIndex index, int color) {
+			mResolver = resolver;
+			mGeneration = generation;
+			mSnapshot = snapshot;
+			mSnapshotPositions = snapshotPositions;
+			mIndex = index;
+			mColor = color;
+		}
+
+		@Override
+		protected MediaList doInBackground(Void... params) {
+			final long start = System.currentTimeMillis();
+
+			if (mSnapshot == null) {
+				mSnapshot = querySnapshot(mResolver);
+			}
+
+			if (mIndex == null) {
+				mIndex = new ColorIndex(loadPalettes(mSnapshot), mSnapshot.size());
+
+				if (DEBUG) {
+					Log.d(TAG, "Indexed " + mIndex.getColorCount() + " colors in " +
+							(System.currentTimeMillis() - start) + " ms");
+				}
+			}
+
+			final MediaSnapshot results = mSnapshot.select(mIndex.search(mColor, SEARCH_DISTANCE));
+
+			mPositions = MediaPositions.of(results);
+			if (mSnapshotPositions == null) {
+				mSnapshotPositions = MediaPositions.of(mSnapshot);
+			}
+
+			if (DEBUG) {
+				Log.d(TAG, "Found " + results.size() + " items in " +
+						(System.currentTimeMillis() - start) + " ms");
+			}
+
+			return results;
+		}
+
+		@Override
+		protected void onPostExecute(MediaList results) {
+			if (mSearchTask != this) {
+				return;
+			}
+
+			mSearchTask = null;
+
+			// keep the index for the next search, unless the images changed meanwhile
+			if (onSnapshot(mSnapshot, mSnapshotPositions, mGeneration)) {
+				mColorIndex = mIndex;
+			}
+
+			if (results.size() == 0) {
+				Toast.makeText(GalleryActivity.this, R.string.search_no_results,
+						Toast.LENGTH_SHORT).show();
+			}
+
+			showItems(results, mPositions);
 		}
 	}
 
 	@Override
 	public void onLoaderReset(Loader<Cursor> loader) {
-		mAdapter.update(null);
+		// the cursor is about to be closed
+		mCursor = null;
+		mMediaList = null;
+
+		if (mAdapter != null) {
+			mAdapter.update(null);
+			mAdapter.notifyDataSetChanged();
+		}
 	}
 
 	@Override
@@ -149,6 +665,7 @@ public class GalleryActivity extends Activity
 			Intent intent = new Intent(this, ImageActivity.class);
 
 			intent.putExtra(ImageActivity.EXTRA_IMAGE_ID, viewHolder.mId);
+			intent.putExtra(ImageActivity.EXTRA_DATE_MODIFIED, viewHolder.mDateModified);
 			intent.putExtra(ImageActivity.EXTRA_IMAGE_PATH, viewHolder.mPath);
 
 			int[] colors = Arrays.copyOf(viewHolder.mColors, viewHolder.mNumColors);
@@ -183,6 +700,8 @@ public class GalleryActivity extends Activity
 	public boolean onCreateOptionsMenu(Menu menu) {
 		MenuInflater inflater = getMenuInflater();
 		inflater.inflate(R.menu.menu_gallery, menu);
+		menu.findItem(R.id.action_clear_search).setVisible(mSearching);
+		menu.findItem(R.id.action_sort_by_hue).setChecked(mSortByHue);
 		return true;
 	}
 
@@ -208,6 +727,23 @@ public class GalleryActivity extends Activity
 				startActivityForResult(intent, RESULT_GALLERY_KITKAT);
 			}
 
+			return true;
+		} else if (id == R.id.action_sort_by_hue) {
+			mSortByHue = !mSortByHue;
+			item.setChecked(mSortByHue);
+
+			if (!mSearching) {
+				if (mSortTask != null) {
+					mSortTask.cancel(false);
+					mSortTask = null;
+				}
+
+				showAll();
+			}
+
+			return true;
+		} else if (id == R.id.action_clear_search) {
+			clearSearch();
 			return true;
 		}
 
@@ -2,11 +2,8 @@ package com.dreamynomad.colorcam;
 
 import android.animation.ObjectAnimator;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
 import android.os.Build;
-import android.provider.MediaStore;
-import android.support.v7.graphics.Palette;
 import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
 import android.util.Log;
@@ -18,11 +15,8 @@ import android.widget.LinearLayout;
 
 import com.dreamynomad.colorcam.cache.BitmapLruCache;
 import com.dreamynomad.colorcam.cache.PaletteLruCache;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import com.dreamynomad.colorcam.executor.DecodeExecutor;
+import com.dreamynomad.colorcam.palette.PackedPalette;
 
 /**
  * Displays images with their palettes.
@@ -36,9 +30,15 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 	private static final int BACKGROUND_COLOR = 0xFFBDBDBD;
 	private static final int DURATION_FADE = 150; // fade duration in ms
 
-	private List<MediaItem> mMediaItems;
+	/**
+	 * Number of colors in each palette.
+	 */
+	static final int NUM_COLORS = 6;
+
+	private MediaList mMediaList;
 
 	private OnItemClickListener mOnItemClickListener;
+	private OnColorLongClickListener mOnColorLongClickListener;
 
 	/**
 	 * Called when the user clicks on an item.
@@ -47,7 +47,13 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 		public void onItemClicked(ViewHolder viewHolder);
 	}
 
-	private static Comparator<Palette.Swatch> mSwatchComparator = GalleryUtils.getSwatchComparator();
+	/**
+	 * Called when the user long-clicks on a color of a palette.
+	 */
+	public static interface OnColorLongClickListener {
+		public void onColorLongClicked(int color);
+	}
+
 
 	/**
 	 * Manages a item, which contains an image and its palette.
@@ -56,6 +62,7 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 
 		public String mPath;
 		public long mId;
+		public long mDateModified;
 		public int[] mColors;
 
 		public int mNumColors;
@@ -63,6 +70,12 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 		public ImageView mImageView;
 		public View[] mColorViews;
 
+		/**
+		 * Bitmap displayed by mImageView, which holds a reference to it in the
+		 * {@link BitmapLruCache}.
+		 */
+		private Bitmap mBitmap;
+
 		public ImageTask mImageTask;
 		public AsyncTask mPaletteTask;
 
@@ -71,7 +84,7 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 
 			mImageView = (ImageView) viewGroup.findViewById(R.id.image);
 
-			mColorViews = new View[6];
+			mColorViews = new View[NUM_COLORS];
 			mColorViews[0] = viewGroup.findViewById(R.id.color_0);
 			mColorViews[1] = viewGroup.findViewById(R.id.color_1);
 			mColorViews[2] = viewGroup.findViewById(R.id.color_2);
@@ -79,7 +92,7 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 			mColorViews[4] = viewGroup.findViewById(R.id.color_4);
 			mColorViews[5] = viewGroup.findViewById(R.id.color_5);
 
-			mColors = new int[6];
+			mColors = new int[NUM_COLORS];
 		}
 	}
 
@@ -92,10 +105,13 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 		private ViewHolder viewHolder;
 		private String pathName;
 		private long imageId;
+		private long dateModified;
+		private boolean decoded;
 
-		public ImageTask(int position, long imageId, ViewHolder viewHolder) {
+		public ImageTask(int position, long imageId, long dateModified, ViewHolder viewHolder) {
 			this.position = position;
 			this.imageId = imageId;
+			this.dateModified = dateModified;
 			this.viewHolder = viewHolder;
 		}
 
@@ -104,18 +120,25 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 			pathName = params[0];
 
 			if (!TextUtils.isEmpty(pathName)) {
+				// palettes computed by a previous process are on disk
+				PaletteLoader.getCached(imageId, dateModified);
+
 				BitmapLruCache cache = BitmapLruCache.getInstance();
-				BitmapFactory.Options options = new BitmapFactory.Options();
-				options.inPreferredConfig = Bitmap.Config.RGB_565;
-
-				if (cache.get(pathName) == null) {
-					Bitmap bitmap = MediaStore.Images.Thumbnails.getThumbnail(
-							App.getContext().getContentResolver(), imageId,
-							MediaStore.Images.Thumbnails.MINI_KIND, options);
-					return bitmap;
-				} else {
-					return cache.get(pathName);
+
+				// held until it is displayed or dropped, so it is not reused if it is evicted
+				Bitmap bitmap = cache.acquire(pathName);
+
+				if (bitmap == null) {
+					bitmap = GalleryUtils.getThumbnail(imageId);
+
+					if (bitmap != null) {
+						decoded = true;
+						cache.acquire(bitmap);
+						cache.put(pathName, bitmap);
+					}
 				}
+
+				return bitmap;
 			}
 
 			return null;
@@ -125,9 +148,7 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 		protected void onPostExecute(Bitmap bitmap) {
 			if (this.position == viewHolder.getPosition() && bitmap != null) {
 				// faster to use image alpha than setAlpha()
-				BitmapLruCache cache = BitmapLruCache.getInstance();
-
-				if (cache.get(pathName) == null) {
+				if (decoded) {
 					if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
 						viewHolder.mImageView.setImageAlpha(0);
 						ObjectAnimator fade =
@@ -138,38 +159,56 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 						viewHolder.mImageView.setAlpha(0.0f);
 						viewHolder.mImageView.animate().setDuration(DURATION_FADE).alpha(1.0f);
 					}
-
-					cache.put(pathName, bitmap);
 				}
 
-				viewHolder.mImageView.setImageBitmap(bitmap);
+				setImage(viewHolder, bitmap);
 
-				PaletteLruCache colorCache = PaletteLruCache.getInstance();
+				PackedPalette palette = PaletteLruCache.getInstance().get(imageId, dateModified);
 
-				if (colorCache.get(pathName) == null) {
-					viewHolder.mPaletteTask =
-							Palette.generateAsync(bitmap, viewHolder.mColorViews.length,
-									new PaletteListener(position, viewHolder, pathName));
+				if (palette == null) {
+					viewHolder.mPaletteTask = new PaletteTask(position, viewHolder,
+							imageId, dateModified, viewHolder.mColorViews.length)
+							.executeOnExecutor(DecodeExecutor.getInstance().forPosition(position));
 				} else {
-					setPalette(viewHolder, colorCache.get(pathName), false);
+					setPalette(viewHolder, palette, false);
 				}
+			} else {
+				BitmapLruCache.getInstance().release(bitmap);
 			}
 		}
+
+		@Override
+		protected void onCancelled(Bitmap bitmap) {
+			BitmapLruCache.getInstance().release(bitmap);
+		}
+	}
+
+	/**
+	 * Displays a bitmap, taking over the caller's reference to it, and releases the bitmap
+	 * that was displayed before.
+	 *
+	 * @param viewHolder the view holder to display the bitmap in
+	 * @param bitmap     the bitmap, or null to clear the image
+	 */
+	private static void setImage(ViewHolder viewHolder, Bitmap bitmap) {
+		viewHolder.mImageView.setImageBitmap(bitmap);
+		BitmapLruCache.getInstance().release(viewHolder.mBitmap);
+		viewHolder.mBitmap = bitmap;
 	}
 
 	/**
 	 * @param viewHolder the view holder to set the colors of
-	 * @param swatches   the palette colors
+	 * @param palette    the palette colors
 	 * @param animate    whether or not to fade the palette in
 	 */
-	private static void setPalette(ViewHolder viewHolder, List<Palette.Swatch> swatches,
+	private static void setPalette(ViewHolder viewHolder, PackedPalette palette,
 	                               boolean animate) {
 		if (viewHolder != null) {
-			viewHolder.mNumColors = swatches.size();
+			viewHolder.mNumColors = palette.size();
 
 			for (int j = 0; j < viewHolder.mColorViews.length; j++) {
 				if (j < viewHolder.mNumColors) {
-					viewHolder.mColors[j] = swatches.get(j).getRgb();
+					viewHolder.mColors[j] = palette.getRgb(j);
 
 					if (animate) {
 						if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
@@ -201,38 +240,70 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 	}
 
 	/**
-	 * Sets the palette of an image once it is ready.
+	 * Generates the palette of an image and sets it once it is ready.
 	 */
-	private static class PaletteListener implements Palette.PaletteAsyncListener {
+	private static class PaletteTask extends AsyncTask<Void, Void, PackedPalette> {
 
 		private int position;
 		private ViewHolder viewHolder;
-		private String pathName;
+		private long imageId;
+		private long dateModified;
+		private int maxColors;
 
-		public PaletteListener(int position, ViewHolder viewHolder, String pathName) {
+		public PaletteTask(int position, ViewHolder viewHolder, long imageId,
+		                   long dateModified, int maxColors) {
 			this.position = position;
 			this.viewHolder = viewHolder;
-			this.pathName = pathName;
+			this.imageId = imageId;
+			this.dateModified = dateModified;
+			this.maxColors = maxColors;
+		}
+
+		@Override
+		protected PackedPalette doInBackground(Void... params) {
+			return PaletteLoader.load(imageId, dateModified, maxColors);
 		}
 
 		@Override
-		public void onGenerated(Palette palette) {
+		protected void onPostExecute(PackedPalette palette) {
 			if (position == viewHolder.getPosition() && palette != null) {
-				// make a copy to sort and store
-				List<Palette.Swatch> swatches = new ArrayList<>(palette.getSwatches());
-				Collections.sort(swatches, mSwatchComparator);
+				setPalette(viewHolder, palette, true);
+			}
+		}
+	}
+
+	/**
+	 * Loads the thumbnail and palette of an item into the caches without displaying them.
+	 * Called on a background thread.
+	 *
+	 * @param item      the item to load
+	 * @param maxColors the maximum number of colors in the palette
+	 */
+	static void preload(MediaItem item, int maxColors) {
+		String pathName = item.getPath();
+
+		if (TextUtils.isEmpty(pathName)) {
+			return;
+		}
 
-				// put the swatches into the cache
-				PaletteLruCache colorCache = PaletteLruCache.getInstance();
-				colorCache.put(pathName, swatches);
+		BitmapLruCache cache = BitmapLruCache.getInstance();
+		Bitmap bitmap = cache.get(pathName);
 
-				setPalette(viewHolder, swatches, true);
+		if (bitmap == null) {
+			bitmap = GalleryUtils.getThumbnail(item.getId());
+
+			if (bitmap == null) {
+				return;
 			}
+
+			cache.put(pathName, bitmap);
 		}
+
+		PaletteLoader.load(item.getId(), item.getDateModified(), maxColors);
 	}
 
-	public GalleryAdapter(List<MediaItem> mediaItems) {
-		mMediaItems = mediaItems;
+	public GalleryAdapter(MediaList mediaList) {
+		mMediaList = mediaList;
 	}
 
 	@Override
@@ -250,6 +321,22 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 			}
 		});
 
+		for (int j = 0; j < viewHolder.mColorViews.length; j++) {
+			final int index = j;
+
+			viewHolder.mColorViews[j].setOnLongClickListener(new View.OnLongClickListener() {
+				@Override
+				public boolean onLongClick(View v) {
+					if (mOnColorLongClickListener != null && index < viewHolder.mNumColors) {
+						mOnColorLongClickListener.onColorLongClicked(viewHolder.mColors[index]);
+						return true;
+					}
+
+					return false;
+				}
+			});
+		}
+
 		return viewHolder;
 	}
 
@@ -268,7 +355,7 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 		}
 
 		// Reset image and colors
-		viewHolder.mImageView.setImageBitmap(null);
+		setImage(viewHolder, null);
 		viewHolder.mImageView.setDrawingCacheBackgroundColor(BACKGROUND_COLOR);
 		for (int j = 0; j < viewHolder.mColorViews.length; j++) {
 			viewHolder.mColorViews[j].setBackgroundColor(BACKGROUND_COLOR);
@@ -278,15 +365,18 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 		viewHolder.mId = -1;
 		viewHolder.mNumColors = 0;
 
-		if (mMediaItems != null) {
-			long id = mMediaItems.get(i).getId();
-			String path = mMediaItems.get(i).getPath();
+		if (mMediaList != null) {
+			long id = mMediaList.getId(i);
+			String path = mMediaList.getPath(i);
+			long dateModified = mMediaList.getDateModified(i);
 
 			if (!TextUtils.isEmpty(path)) {
 				viewHolder.mPath = path;
 				viewHolder.mId = id;
-				viewHolder.mImageTask = new ImageTask(i, id, viewHolder);
-				viewHolder.mImageTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, path);
+				viewHolder.mDateModified = dateModified;
+				viewHolder.mImageTask = new ImageTask(i, id, dateModified, viewHolder);
+				viewHolder.mImageTask.executeOnExecutor(
+						DecodeExecutor.getInstance().forPosition(i), path);
 			} else {
 				Log.e(TAG, "Data column is null!");
 			}
@@ -295,20 +385,237 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
 		}
 	}
 
+	@Override
+	public void onViewRecycled(ViewHolder viewHolder) {
+		// recycled views are not on screen
+		setImage(viewHolder, null);
+	}
+
 	@Override
 	public int getItemCount() {
-		if (mMediaItems != null) {
-			return mMediaItems.size();
+		if (mMediaList != null) {
+			return mMediaList.size();
 		}
 
 		return 0;
 	}
 
-	public void update(List<MediaItem> mediaItems) {
-		mMediaItems = mediaItems;
+	/**
+	 * @return the item at the position, or null if there is none
+	 */
+	MediaItem getItem(int position) {
+		if (mMediaList != null && position >= 0 && position < mMediaList.size()) {
+			return new MediaItem(mMediaList.getId(position), mMediaList.getPath(position),
+					mMediaList.getDateModified(position));
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return the items that are shown, which may be null
+	 */
+	public MediaList getMediaList() {
+		return mMediaList;
+	}
+
+	public void update(MediaList mediaList) {
+		mMediaList = mediaList;
+	}
+
+	/**
+	 * Replaces the items and notifies only the range between the unchanged items at the start
+	 * and the end, so those are neither rebound nor animated.
+	 * <p/>
+	 * When items were reordered rather than only added or removed, as by a sort, the items in
+	 * the visible range are found in the new list and moved to their new positions instead, so
+	 * they are not rebound either; every other item is rebound as it scrolls in.
+	 *
+	 * @param positions     positions of the items of the new list, or null to rebind the range
+	 *                      between the unchanged items
+	 * @param firstVisible  first visible position, or {@link RecyclerView#NO_POSITION}
+	 * @param lastVisible   last visible position, or {@link RecyclerView#NO_POSITION}
+	 */
+	public void replace(MediaList mediaList, MediaPositions positions, int firstVisible,
+	                    int lastVisible) {
+		final MediaList oldList = mMediaList;
+		mMediaList = mediaList;
+
+		if (oldList == null || mediaList == null || oldList == mediaList) {
+			// nothing to compare with
+			notifyDataSetChanged();
+			return;
+		}
+
+		final int oldSize = oldList.size();
+		final int newSize = mediaList.size();
+		final int minSize = Math.min(oldSize, newSize);
+
+		int start = 0;
+		while (start < minSize && isSameItem(oldList, start, mediaList, start)) {
+			start++;
+		}
+
+		int end = 0;
+		while (end < minSize - start &&
+				isSameItem(oldList, oldSize - 1 - end, mediaList, newSize - 1 - end)) {
+			end++;
+		}
+
+		final int oldCount = oldSize - start - end;
+		final int newCount = newSize - start - end;
+		final int changedCount = Math.min(oldCount, newCount);
+
+		if (changedCount > 0 && positions != null &&
+				moveVisible(oldList, positions, firstVisible, lastVisible)) {
+			return;
+		}
+
+		if (changedCount > 0) {
+			notifyItemRangeChanged(start, changedCount);
+		}
+
+		if (newCount > oldCount) {
+			notifyItemRangeInserted(start + changedCount, newCount - oldCount);
+		} else if (oldCount > newCount) {
+			notifyItemRangeRemoved(start + changedCount, oldCount - newCount);
+		}
+	}
+
+	/**
+	 * Notifies the change from the old items to the current ones as moves of the visible items
+	 * that are in both, removals of the visible items that are not, and changes of every other
+	 * position.
+	 *
+	 * @return whether any position was visible
+	 */
+	private boolean moveVisible(MediaList oldList, MediaPositions positions, int firstVisible,
+	                            int lastVisible) {
+		final int newSize = mMediaList.size();
+		final int first = Math.max(firstVisible, 0);
+		final int last = Math.min(lastVisible, oldList.size() - 1);
+
+		if (firstVisible == RecyclerView.NO_POSITION || first > last) {
+			return false;
+		}
+
+		// visible items that are kept, from the last one, with their current and new positions
+		final int[] current = new int[last - first + 1];
+		final int[] target = new int[current.length];
+		int kept = 0;
+		int size = oldList.size();
+
+		for (int position = last; position >= first; position--) {
+			final int newPosition = positions.positionOf(oldList.getId(position));
+
+			if (newPosition >= 0 && newPosition < newSize &&
+					isSameItem(oldList, position, mMediaList, newPosition)) {
+				current[kept] = position;
+				target[kept] = newPosition;
+				kept++;
+			} else {
+				notifyItemRemoved(position);
+				size--;
+
+				// every kept item is after it
+				for (int i = 0; i < kept; i++) {
+					current[i]--;
+				}
+			}
+		}
+
+		if (size < newSize) {
+			notifyItemRangeInserted(size, newSize - size);
+		} else {
+			// remove the other items from the end, since there are at most newSize kept items
+			int excess = size - newSize;
+			int end = size;
+
+			for (int i = 0; i <= kept && excess > 0; i++) {
+				final int runStart = i < kept ? current[i] + 1 : 0;
+				final int count = Math.min(excess, end - runStart);
+
+				if (count > 0) {
+					notifyItemRangeRemoved(end - count, count);
+					excess -= count;
+
+					for (int j = 0; j < i; j++) {
+						current[j] -= count;
+					}
+				}
+
+				if (i < kept) {
+					end = current[i];
+				}
+			}
+		}
+
+		// by new position, which are distinct since ids are
+		for (int i = 1; i < kept; i++) {
+			final int c = current[i];
+			final int t = target[i];
+			int j = i - 1;
+
+			while (j >= 0 && target[j] > t) {
+				current[j + 1] = current[j];
+				target[j + 1] = target[j];
+				j--;
+			}
+
+			current[j + 1] = c;
+			target[j + 1] = t;
+		}
+
+		// gather the kept items at the start in their new order, since a move to an earlier
+		// position only shifts the items that are not placed yet
+		for (int i = 0; i < kept; i++) {
+			final int from = current[i];
+
+			if (from != i) {
+				notifyItemMoved(from, i);
+
+				for (int j = i + 1; j < kept; j++) {
+					if (current[j] >= i && current[j] < from) {
+						current[j]++;
+					}
+				}
+			}
+		}
+
+		// then move each to its new position from the last one, which only shifts items that
+		// are placed before it
+		for (int i = kept - 1; i >= 0; i--) {
+			if (target[i] != i) {
+				notifyItemMoved(i, target[i]);
+			}
+		}
+
+		// every other position shows a different item, which is bound when it scrolls in
+		int changedStart = 0;
+
+		for (int i = 0; i <= kept; i++) {
+			final int changedEnd = i < kept ? target[i] : newSize;
+
+			if (changedEnd > changedStart) {
+				notifyItemRangeChanged(changedStart, changedEnd - changedStart);
+			}
+
+			changedStart = changedEnd + 1;
+		}
+
+		return true;
+	}
+
+	private static boolean isSameItem(MediaList a, int positionA, MediaList b, int positionB) {
+		return a.getId(positionA) == b.getId(positionB) &&
+				a.getDateModified(positionA) == b.getDateModified(positionB);
 	}
 
 	public void setOnItemClickListener(OnItemClickListener listener) {
 		mOnItemClickListener = listener;
 	}
+
+	public void setOnColorLongClickListener(OnColorLongClickListener listener) {
+		mOnColorLongClickListener = listener;
+	}
 }
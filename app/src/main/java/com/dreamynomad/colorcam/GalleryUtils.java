@@ -1,12 +1,26 @@
 package com.dreamynomad.colorcam;
 
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.support.v7.graphics.Palette;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Log;
 
+import com.dreamynomad.colorcam.cache.BitmapPool;
+import com.dreamynomad.colorcam.decode.ImageHeaderParser;
+import com.dreamynomad.colorcam.decode.SampleSize;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Comparator;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
@@ -20,14 +34,85 @@ import javax.microedition.khronos.egl.EGLDisplay;
  */
 public class GalleryUtils {
 
+	private static final String TAG = GalleryUtils.class.getSimpleName();
+
 	private static final int DEFAULT_MAX_BITMAP_SIZE = 2048;
 
 	/**
-	 * Maximum OpenGL texture size.
+	 * Size of a {@link android.provider.MediaStore.Images.Thumbnails#MINI_KIND} thumbnail.
+	 */
+	private static final int MINI_KIND_WIDTH = 512;
+	private static final int MINI_KIND_HEIGHT = 384;
+
+	/**
+	 * Size of a {@link android.provider.MediaStore.Images.Thumbnails#MICRO_KIND} thumbnail.
 	 */
-	private static final int sMaxBitmapSize;
+	public static final int MICRO_KIND_SIZE = 96;
+
+	/**
+	 * Images are read in chunks of this size until their header has been parsed.
+	 */
+	private static final int HEADER_READ_SIZE = 4 * 1024;
+
+	/**
+	 * Maximum amount of an image that is read to find its size, which fits the EXIF segment
+	 * that usually comes before the dimensions of a JPEG.
+	 */
+	private static final int MAX_HEADER_SIZE = 128 * 1024;
+
+	private static final ThreadLocal<byte[]> sHeaderBuffer = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[MAX_HEADER_SIZE];
+		}
+	};
+
+	/**
+	 * Sample size of a preview, which JPEG can decode much faster than the full image.
+	 */
+	private static final int PREVIEW_SAMPLE_SIZE = 8;
+
+	private static final String PREFERENCES_NAME = "gallery_utils";
+	private static final String PREF_MAX_BITMAP_SIZE = "max_bitmap_size";
+	private static final String PREF_FINGERPRINT = "fingerprint";
 
-	static {
+	/**
+	 * Maximum OpenGL texture size, which is the default until it has been probed.
+	 */
+	private static volatile int sMaxBitmapSize = DEFAULT_MAX_BITMAP_SIZE;
+
+	/**
+	 * Loads the maximum texture size on a background thread, probing it from OpenGL on the first
+	 * launch after install or a system update.
+	 */
+	public static void preloadMaxBitmapSize() {
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final SharedPreferences preferences = App.getContext()
+						.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+				int maxBitmapSize = preferences.getInt(PREF_MAX_BITMAP_SIZE, 0);
+
+				if (maxBitmapSize <= 0 ||
+						!Build.FINGERPRINT.equals(preferences.getString(PREF_FINGERPRINT, null))) {
+					maxBitmapSize = Math.max(queryMaxTextureSize(), DEFAULT_MAX_BITMAP_SIZE);
+
+					preferences.edit()
+							.putInt(PREF_MAX_BITMAP_SIZE, maxBitmapSize)
+							.putString(PREF_FINGERPRINT, Build.FINGERPRINT)
+							.apply();
+				}
+
+				sMaxBitmapSize = maxBitmapSize;
+			}
+		}, "MaxBitmapSize").start();
+	}
+
+	/**
+	 * @return the largest texture size of any EGL config, or 0 if there are none
+	 */
+	private static int queryMaxTextureSize() {
 		// Get maximum bitmap size from OpenGL
 		// http://stackoverflow.com/questions/15313807/android-maximum-allowed-width-height-of-bitmap/26823209#26823209
 
@@ -64,8 +149,7 @@ public class GalleryUtils {
 		// Release
 		egl.eglTerminate(display);
 
-		// Return largest texture size found, or default
-		sMaxBitmapSize = Math.max(maximumTextureSize, DEFAULT_MAX_BITMAP_SIZE);
+		return maximumTextureSize;
 	}
 
 	// http://developer.android.com/training/displaying-bitmaps/load-bitmap.html
@@ -77,19 +161,17 @@ public class GalleryUtils {
 	// http://developer.android.com/training/displaying-bitmaps/load-bitmap.html
 	public static Bitmap decodeSampledBitmapFromResource(
 			String pathName, int reqWidth, int reqHeight, boolean inMutable) {
-
-		// First decode with inJustDecodeBounds=true to check dimensions
-		final BitmapFactory.Options options = new BitmapFactory.Options();
-		options.inJustDecodeBounds = true;
-		BitmapFactory.decodeFile(pathName, options);
-
-		// Calculate inSampleSize
-		options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
-
-		// Decode bitmap with inSampleSize set
-		options.inJustDecodeBounds = false;
-		options.inMutable = inMutable;
-		return BitmapFactory.decodeFile(pathName, options);
+		FileInputStream inputStream = null;
+		try {
+			inputStream = new FileInputStream(pathName);
+			return decodeSampledBitmapFromResource(
+					inputStream.getFD(), reqWidth, reqHeight, inMutable);
+		} catch (IOException e) {
+			Log.e(TAG, "Could not open " + pathName, e);
+			return null;
+		} finally {
+			closeQuietly(inputStream);
+		}
 	}
 
 	// http://developer.android.com/training/displaying-bitmaps/load-bitmap.html
@@ -98,22 +180,52 @@ public class GalleryUtils {
 		return decodeSampledBitmapFromResource(inputStream, reqWidth, reqHeight, false);
 	}
 
-	// http://developer.android.com/training/displaying-bitmaps/load-bitmap.html
+	/**
+	 * The stream can only be read once, so the header that was read to find the size is
+	 * replayed in front of the rest of the stream for the decode. For a format that the header
+	 * parser does not know, the decoder may read up to {@link #MAX_HEADER_SIZE} bytes to find
+	 * the size; an image that needs more than that to be measured is not decoded.
+	 */
 	public static Bitmap decodeSampledBitmapFromResource(
 			InputStream inputStream, int reqWidth, int reqHeight, boolean inMutable) {
-
-		// First decode with inJustDecodeBounds=true to check dimensions
 		final BitmapFactory.Options options = new BitmapFactory.Options();
-		options.inJustDecodeBounds = true;
-		BitmapFactory.decodeStream(inputStream, null, options);
+		final byte[] header = sHeaderBuffer.get();
+		final int length;
+
+		try {
+			length = readHeader(inputStream, header, options);
+		} catch (IOException e) {
+			Log.e(TAG, "Could not read image header", e);
+			return null;
+		}
+
+		InputStream stream = new SequenceInputStream(
+				new ByteArrayInputStream(header, 0, length), inputStream);
+
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			// unknown header, so let the decoder find the size and then replay what it read,
+			// which is bounded so that the buffer never holds the whole image
+			stream = new BufferedInputStream(stream);
+			stream.mark(MAX_HEADER_SIZE);
+
+			options.inJustDecodeBounds = true;
+			BitmapFactory.decodeStream(stream, null, options);
+			options.inJustDecodeBounds = false;
+
+			try {
+				stream.reset();
+			} catch (IOException e) {
+				Log.e(TAG, "Could not rewind image stream", e);
+				return null;
+			}
+		}
 
 		// Calculate inSampleSize
 		options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
 
 		// Decode bitmap with inSampleSize set
-		options.inJustDecodeBounds = false;
 		options.inMutable = inMutable;
-		return BitmapFactory.decodeStream(inputStream, null, options);
+		return BitmapFactory.decodeStream(stream, null, options);
 	}
 
 	// http://developer.android.com/training/displaying-bitmaps/load-bitmap.html
@@ -125,76 +237,235 @@ public class GalleryUtils {
 	// http://developer.android.com/training/displaying-bitmaps/load-bitmap.html
 	public static Bitmap decodeSampledBitmapFromResource(
 			FileDescriptor fileDescriptor, int reqWidth, int reqHeight, boolean inMutable) {
-
-		// First decode with inJustDecodeBounds=true to check dimensions
 		final BitmapFactory.Options options = new BitmapFactory.Options();
-		options.inJustDecodeBounds = true;
-		BitmapFactory.decodeFileDescriptor(fileDescriptor, null, options);
+
+		if (!readBounds(fileDescriptor, options)) {
+			return null;
+		}
 
 		// Calculate inSampleSize
 		options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
 
 		// Decode bitmap with inSampleSize set
-		options.inJustDecodeBounds = false;
 		options.inMutable = inMutable;
-		return BitmapFactory.decodeFileDescriptor(fileDescriptor, null, options);
+		BitmapPool.getInstance().addInBitmapOptions(options);
+
+		try {
+			return BitmapFactory.decodeFileDescriptor(fileDescriptor, null, options);
+		} catch (IllegalArgumentException e) {
+			// the pooled bitmap could not be reused
+			releaseInBitmap(options, inMutable);
+			return BitmapFactory.decodeFileDescriptor(fileDescriptor, null, options);
+		}
 	}
 
 	/**
-	 * @param options   contains the raw height and width of the image
-	 * @param reqWidth  the desired width
-	 * @param reqHeight the desired height
-	 * @return the value of {@link android.graphics.BitmapFactory.Options#inSampleSize}
-	 * that ensures the resulting bitmap is larger than the desired width and height
+	 * Decodes a low resolution preview of an image, which is much faster than decoding it at
+	 * the requested size.
+	 *
+	 * @param pathName the path to the image
+	 * @param reqSize  the size that the image will be decoded at afterwards
+	 * @param minWidth the width that the preview must exceed to be worth displaying, such as
+	 *                 the width of a placeholder that is already displayed
+	 * @return the preview, or null if it would not be faster or sharper
 	 */
-	public static int calculateInSampleSize(
-			BitmapFactory.Options options, int reqWidth, int reqHeight) {
-		// Raw height and width of image
-		final int height = options.outHeight;
-		final int width = options.outWidth;
-		int inSampleSize = 1;
-
-		if (height > reqHeight || width > reqWidth) {
-
-			final int halfHeight = height / 2;
-			final int halfWidth = width / 2;
-
-			// Calculate the largest inSampleSize value that is a power of 2 and keeps both
-			// height and width larger than the requested height and width.
-			// Make sure bitmap can be rendered by ImageView by checking dimensions
-			while (((halfHeight / inSampleSize) > reqHeight
-					&& (halfWidth / inSampleSize) > reqWidth)
-					|| (height / inSampleSize) > sMaxBitmapSize
-					|| (width / inSampleSize) > sMaxBitmapSize) {
-				inSampleSize *= 2;
-			}
+	public static Bitmap decodePreview(String pathName, int reqSize, int minWidth) {
+		FileInputStream inputStream = null;
+		try {
+			inputStream = new FileInputStream(pathName);
+			return decodePreview(inputStream.getFD(), reqSize, minWidth);
+		} catch (IOException e) {
+			Log.e(TAG, "Could not open " + pathName, e);
+			return null;
+		} finally {
+			closeQuietly(inputStream);
+		}
+	}
+
+	/**
+	 * @see #decodePreview(String, int, int)
+	 */
+	public static Bitmap decodePreview(FileDescriptor fileDescriptor, int reqSize, int minWidth) {
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+
+		if (!readBounds(fileDescriptor, options) ||
+				!shouldDecodePreview(options, reqSize, minWidth)) {
+			return null;
 		}
 
-		return inSampleSize;
+		options.inSampleSize = PREVIEW_SAMPLE_SIZE;
+		// mutable, so that the pool can take it back once the full image replaces it
+		options.inMutable = true;
+		BitmapPool.getInstance().addInBitmapOptions(options);
+
+		try {
+			return BitmapFactory.decodeFileDescriptor(fileDescriptor, null, options);
+		} catch (IllegalArgumentException e) {
+			// the pooled bitmap could not be reused
+			releaseInBitmap(options, true);
+			return BitmapFactory.decodeFileDescriptor(fileDescriptor, null, options);
+		}
 	}
 
 	/**
-	 * @return a comparator that sorts by HSL
+	 * Finds the size of an image from its header, leaving the file offset where it was so that
+	 * it can be decoded afterwards. Only images with an unknown header are parsed by the
+	 * decoder.
+	 *
+	 * @param options receives the raw height and width of the image
+	 * @return whether the size was found
 	 */
-	public static Comparator<Palette.Swatch> getSwatchComparator() {
-		return new Comparator<Palette.Swatch>() {
-			@Override
-			public int compare(Palette.Swatch hsl1, Palette.Swatch hsl2) {
-				int hue = (int) Math.signum(hsl1.getHsl()[0] - hsl2.getHsl()[0]);
-
-				if (hue != 0) {
-					return hue;
-				} else {
-					int saturation = (int) Math.signum(hsl1.getHsl()[1] - hsl2.getHsl()[1]);
-
-					if (saturation != 0) {
-						return saturation;
-					} else {
-						// try luminance
-						return (int) Math.signum(hsl1.getHsl()[2] - hsl2.getHsl()[2]);
-					}
-				}
+	private static boolean readBounds(FileDescriptor fileDescriptor,
+	                                  BitmapFactory.Options options) {
+		// does not own the descriptor, so it is not closed
+		final FileInputStream inputStream = new FileInputStream(fileDescriptor);
+
+		try {
+			final FileChannel channel = inputStream.getChannel();
+			final long position = channel.position();
+
+			readHeader(inputStream, sHeaderBuffer.get(), options);
+			channel.position(position);
+		} catch (IOException e) {
+			Log.e(TAG, "Could not read image header", e);
+			return false;
+		}
+
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			options.inJustDecodeBounds = true;
+			BitmapFactory.decodeFileDescriptor(fileDescriptor, null, options);
+			options.inJustDecodeBounds = false;
+		}
+
+		return options.outWidth > 0 && options.outHeight > 0;
+	}
+
+	/**
+	 * Reads the start of an image until its size is known, or the buffer is full.
+	 *
+	 * @param options receives the raw height and width of the image, or -1 if they are unknown
+	 * @return the number of bytes read into the buffer
+	 */
+	private static int readHeader(InputStream inputStream, byte[] buffer,
+	                              BitmapFactory.Options options) throws IOException {
+		final int[] size = new int[2];
+		int length = 0;
+
+		options.outWidth = -1;
+		options.outHeight = -1;
+
+		while (length < buffer.length) {
+			final int read = inputStream.read(buffer, length,
+					Math.min(HEADER_READ_SIZE, buffer.length - length));
+
+			if (read < 0) {
+				break;
+			}
+
+			length += read;
+
+			if (ImageHeaderParser.getSize(buffer, length, size)) {
+				options.outWidth = size[0];
+				options.outHeight = size[1];
+				break;
+			}
+		}
+
+		return length;
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				Log.e(TAG, "Could not close stream", e);
 			}
-		};
+		}
+	}
+
+	/**
+	 * @param options contains the raw height and width of the image
+	 * @return whether a preview is sharper than what is displayed, and is sampled more than
+	 * the final image
+	 */
+	private static boolean shouldDecodePreview(BitmapFactory.Options options, int reqSize,
+	                                           int minWidth) {
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			return false;
+		}
+
+		return calculateInSampleSize(options, reqSize, reqSize) < PREVIEW_SAMPLE_SIZE &&
+				options.outWidth / PREVIEW_SAMPLE_SIZE > minWidth;
+	}
+
+	/**
+	 * @param imageId the {@link android.provider.MediaStore} id of the image
+	 * @return the {@link android.provider.MediaStore.Images.Thumbnails#MINI_KIND} thumbnail,
+	 * decoded into a pooled bitmap when possible
+	 */
+	public static Bitmap getThumbnail(long imageId) {
+		return getThumbnail(imageId, MediaStore.Images.Thumbnails.MINI_KIND,
+				MINI_KIND_WIDTH, MINI_KIND_HEIGHT, Bitmap.Config.RGB_565);
+	}
+
+	/**
+	 * @param imageId the {@link android.provider.MediaStore} id of the image
+	 * @return the {@link android.provider.MediaStore.Images.Thumbnails#MICRO_KIND} thumbnail,
+	 * decoded into a pooled bitmap when possible
+	 */
+	public static Bitmap getMicroThumbnail(long imageId) {
+		return getThumbnail(imageId, MediaStore.Images.Thumbnails.MICRO_KIND,
+				MICRO_KIND_SIZE, MICRO_KIND_SIZE, Bitmap.Config.ARGB_8888);
+	}
+
+	private static Bitmap getThumbnail(long imageId, int kind, int width, int height,
+	                                   Bitmap.Config config) {
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inPreferredConfig = config;
+		options.inMutable = true;
+
+		// thumbnail dimensions are only known in advance closely enough to reuse a larger bitmap
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			BitmapPool.getInstance().addInBitmapOptions(options, width, height);
+		}
+
+		try {
+			return MediaStore.Images.Thumbnails.getThumbnail(
+					App.getContext().getContentResolver(), imageId, kind, options);
+		} catch (IllegalArgumentException e) {
+			// the pooled bitmap could not be reused
+			releaseInBitmap(options, true);
+			return MediaStore.Images.Thumbnails.getThumbnail(
+					App.getContext().getContentResolver(), imageId, kind, options);
+		}
+	}
+
+	/**
+	 * Returns the bitmap in {@link android.graphics.BitmapFactory.Options#inBitmap} to the pool
+	 * after a failed decode, so that the options can be used to decode without it.
+	 *
+	 * @param inMutable whether the caller asked for a mutable bitmap, which the decode without
+	 *                  a pooled bitmap goes back to
+	 */
+	private static void releaseInBitmap(BitmapFactory.Options options, boolean inMutable) {
+		if (options.inBitmap != null) {
+			BitmapPool.getInstance().put(options.inBitmap);
+			options.inBitmap = null;
+			options.inMutable = inMutable;
+		}
+	}
+
+	/**
+	 * @param options   contains the raw height and width of the image
+	 * @param reqWidth  the desired width
+	 * @param reqHeight the desired height
+	 * @return the value of {@link android.graphics.BitmapFactory.Options#inSampleSize}
+	 * that ensures the resulting bitmap is larger than the desired width and height
+	 */
+	public static int calculateInSampleSize(
+			BitmapFactory.Options options, int reqWidth, int reqHeight) {
+		return SampleSize.calculate(options.outWidth, options.outHeight, reqWidth, reqHeight,
+				sMaxBitmapSize);
 	}
 }
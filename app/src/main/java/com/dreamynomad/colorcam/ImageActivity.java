@@ -7,6 +7,7 @@ import android.content.ContentUris;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.Paint;
@@ -22,7 +23,6 @@ import android.os.Environment;
 import android.os.ParcelFileDescriptor;
 import android.provider.MediaStore;
 import android.support.annotation.NonNull;
-import android.support.v7.graphics.Palette;
 import android.util.Log;
 import android.util.TypedValue;
 import android.view.Display;
@@ -38,16 +38,19 @@ import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.Toast;
 
+import com.dreamynomad.colorcam.cache.BitmapLruCache;
+import com.dreamynomad.colorcam.cache.BitmapPool;
+import com.dreamynomad.colorcam.palette.PackedPalette;
+
 import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
-import java.util.List;
 
 /**
  * Allows user to add a palette to an image.
@@ -57,6 +60,7 @@ public class ImageActivity extends Activity {
 	private static final String TAG = ImageActivity.class.getSimpleName();
 
 	public static final String EXTRA_IMAGE_ID = "com.dreamynomad.colorcam.image_id";
+	public static final String EXTRA_DATE_MODIFIED = "com.dreamynomad.colorcam.date_modified";
 	public static final String EXTRA_IMAGE_PATH = "com.dreamynomad.colorcam.image_path";
 	public static final String EXTRA_IMAGE_URI = "com.dreamynomad.colorcam.image_uri";
 	public static final String EXTRA_COLORS = "com.dreamynomad.colorcam.colors";
@@ -66,13 +70,22 @@ public class ImageActivity extends Activity {
 	private static final int NUM_COLORS = 6;
 
 	private long mId = -1;
+	private long mDateModified;
 	private String mPath;
 	private Uri mUri;
 	private int[] mColors;
 
 	private ImageView mImageView;
+
+	/**
+	 * Gallery thumbnail shown until the image is decoded, referenced in the
+	 * {@link BitmapLruCache} so it is not reused while it is displayed.
+	 */
+	private Bitmap mThumbnail;
 	private View mSwatches;
 
+	private ImageTask mImageTask;
+
 	private View.OnTouchListener mImageTouchListener = new View.OnTouchListener() {
 		@Override
 		public boolean onTouch(View v, MotionEvent event) {
@@ -99,6 +112,10 @@ public class ImageActivity extends Activity {
 	};
 
 	private static float getImageHeight(ImageView imageView) {
+		if (imageView.getDrawable() == null) {
+			return 0;
+		}
+
 		float[] matrix = new float[9];
 		imageView.getImageMatrix().getValues(matrix);
 		return matrix[Matrix.MSCALE_Y] * imageView.getDrawable().getIntrinsicHeight();
@@ -107,6 +124,10 @@ public class ImageActivity extends Activity {
 	private float getSwatchesPosition() {
 		float imageHeight = getImageHeight(mImageView);
 
+		if (imageHeight <= 0) {
+			return -1;
+		}
+
 		float viewY = mSwatches.getY() -
 				(mImageView.getY() + mImageView.getMeasuredHeight() / 2 - imageHeight / 2) +
 				mSwatches.getMeasuredHeight() / 2;
@@ -152,7 +173,8 @@ public class ImageActivity extends Activity {
 				mImageView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
 					@Override
 					public boolean onPreDraw() {
-						if (mSwatches != null && mImageView != null) {
+						if (mSwatches != null && mImageView != null &&
+								mImageView.getDrawable() != null) {
 
 							float y = mImageView.getY() + mImageView.getMeasuredHeight() / 2 +
 									getImageHeight(mImageView) * (swatchesPosition - 0.5f);
@@ -170,30 +192,37 @@ public class ImageActivity extends Activity {
 
 		if (intent.hasExtra(EXTRA_IMAGE_PATH) && intent.getStringExtra(EXTRA_IMAGE_PATH) != null) {
 			mId = intent.getLongExtra(EXTRA_IMAGE_ID, -1);
+			mDateModified = intent.getLongExtra(EXTRA_DATE_MODIFIED, 0);
 
 			mPath = intent.getStringExtra(EXTRA_IMAGE_PATH);
-			Bitmap bitmap = GalleryUtils.decodeSampledBitmapFromResource(mPath, min, min);
 
-			if (bitmap != null) {
-				if (mImageView != null) {
-					mImageView.setImageBitmap(bitmap);
-				}
+			// show the gallery thumbnail until the full image is decoded
+			Bitmap thumbnail = BitmapLruCache.getInstance().acquire(mPath);
+
+			if (thumbnail != null && mImageView != null) {
+				mImageView.setImageBitmap(thumbnail);
+				mThumbnail = thumbnail;
+			} else {
+				BitmapLruCache.getInstance().release(thumbnail);
+			}
+
+			if (intent.hasExtra(EXTRA_COLORS)) {
+				int[] colors = intent.getIntArrayExtra(EXTRA_COLORS);
 
-				if (intent.hasExtra(EXTRA_COLORS)) {
-					int[] colors = intent.getIntArrayExtra(EXTRA_COLORS);
+				if (colors != null && colors.length > 0) {
+					mColors = colors;
 
-					if (colors != null && colors.length > 0) {
-						mColors = colors;
-						setColors(colors, getSwatchesWidth(bitmap));
-					} else {
-						new ColorTask().execute(bitmap);
+					if (thumbnail != null) {
+						setColors(colors, getSwatchesWidth(thumbnail));
 					}
-				} else {
-					new ColorTask().execute(bitmap);
 				}
-			} else {
-				finish();
 			}
+
+			if (mColors == null && mSwatches != null) {
+				mSwatches.setVisibility(View.GONE);
+			}
+
+			startImageTask(min);
 		} else if (intent.hasExtra(EXTRA_IMAGE_URI)) {
 			Uri imageUri = intent.getParcelableExtra(EXTRA_IMAGE_URI);
 
@@ -203,7 +232,7 @@ public class ImageActivity extends Activity {
 				}
 
 				mUri = imageUri;
-				new ImageTask(min).execute(imageUri);
+				startImageTask(min);
 			} else {
 				finish();
 			}
@@ -216,13 +245,41 @@ public class ImageActivity extends Activity {
 				}
 
 				mUri = imageUri;
-				new ImageTask(min).execute(imageUri);
+				startImageTask(min);
 			} else {
 				finish();
 			}
 		}
 	}
 
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+
+		if (mImageTask != null) {
+			// releases the preview once the decode returns
+			mImageTask.cancel(false);
+			mImageTask = null;
+		}
+
+		releaseThumbnail();
+	}
+
+	private void startImageTask(int reqSize) {
+		mImageTask = new ImageTask(reqSize);
+		mImageTask.execute();
+	}
+
+	/**
+	 * Lets the gallery thumbnail be reused once it is no longer displayed.
+	 */
+	private void releaseThumbnail() {
+		if (mThumbnail != null) {
+			BitmapLruCache.getInstance().release(mThumbnail);
+			mThumbnail = null;
+		}
+	}
+
 	@Override
 	protected void onSaveInstanceState(@NonNull Bundle outState) {
 		outState.putFloat(STATE_SWATCHES_POSITION, getSwatchesPosition());
@@ -308,21 +365,86 @@ public class ImageActivity extends Activity {
 	}
 
 	/**
-	 * Loads and displays an image.
+	 * @param reqSize  the size that the image will be decoded at afterwards
+	 * @param minWidth the width that the preview must exceed to be worth displaying
+	 * @return a low resolution preview of the image, or null if it is not worth displaying
+	 */
+	private Bitmap loadPreview(int reqSize, int minWidth) {
+		if (mPath != null) {
+			return GalleryUtils.decodePreview(mPath, reqSize, minWidth);
+		} else if (mUri != null) {
+			try {
+				ParcelFileDescriptor parcelFileDescriptor =
+						getContentResolver().openFileDescriptor(mUri, "r");
+				Bitmap bitmap = GalleryUtils.decodePreview(
+						parcelFileDescriptor.getFileDescriptor(), reqSize, minWidth);
+
+				parcelFileDescriptor.close();
+
+				return bitmap;
+			} catch (IOException e) {
+				Log.e(TAG, "Could not load file from: " + mUri.toString(), e);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Loads and displays the image from {@link #mPath} or {@link #mUri}, progressively.
+	 * <p/>
+	 * Whatever is already displayed, such as the gallery thumbnail, is first replaced by a
+	 * heavily sampled preview, and then by the image decoded at the requested size.
 	 */
-	private class ImageTask extends AsyncTask<Uri, Void, Bitmap> {
+	private class ImageTask extends AsyncTask<Void, Bitmap, Bitmap> {
 
 		private int reqSize;
+		private int placeholderWidth;
+
+		private Bitmap preview;
 
 		private ImageTask(int reqSize) {
 			this.reqSize = reqSize;
+
+			if (mImageView != null && mImageView.getDrawable() != null) {
+				placeholderWidth = mImageView.getDrawable().getIntrinsicWidth();
+			}
+		}
+
+		@Override
+		protected Bitmap doInBackground(Void... params) {
+			Bitmap lowResolution = loadPreview(reqSize, placeholderWidth);
+
+			if (isCancelled()) {
+				// never displayed
+				BitmapPool.getInstance().put(lowResolution);
+				return null;
+			}
+
+			if (lowResolution != null) {
+				publishProgress(lowResolution);
+			}
+
+			if (mPath != null) {
+				return GalleryUtils.decodeSampledBitmapFromResource(mPath, reqSize, reqSize);
+			} else if (mUri != null) {
+				return loadUri(mUri, reqSize, false);
+			}
+
+			return null;
 		}
 
 		@Override
-		protected Bitmap doInBackground(Uri... params) {
-			Uri imageUri = params[0];
+		protected void onProgressUpdate(Bitmap... values) {
+			preview = values[0];
 
-			return loadUri(imageUri, reqSize, false);
+			if (mImageView != null) {
+				mImageView.setImageBitmap(preview);
+			}
+
+			if (mColors != null) {
+				setColors(mColors, getSwatchesWidth(preview));
+			}
 		}
 
 		@Override
@@ -332,10 +454,43 @@ public class ImageActivity extends Activity {
 					mImageView.setImageBitmap(bitmap);
 				}
 
-				new ColorTask().execute(bitmap);
+				// no longer displayed
+				releasePreview();
+				releaseThumbnail();
+
+				if (mColors != null) {
+					// palette came from the gallery
+					setColors(mColors, getSwatchesWidth(bitmap));
+				} else {
+					new ColorTask().execute(bitmap);
+				}
 			} else {
+				// the thumbnail, if any, stays until the activity is closed
+				if (mImageView != null && preview != null) {
+					mImageView.setImageBitmap(mThumbnail);
+				}
+
+				releasePreview();
 				finish();
 			}
+
+			if (mImageTask == this) {
+				mImageTask = null;
+			}
+		}
+
+		@Override
+		protected void onCancelled(Bitmap bitmap) {
+			// the activity is destroyed, so neither is displayed any more
+			releasePreview();
+			BitmapPool.getInstance().put(bitmap);
+		}
+
+		private void releasePreview() {
+			if (preview != null) {
+				BitmapPool.getInstance().put(preview);
+				preview = null;
+			}
 		}
 	}
 
@@ -354,18 +509,18 @@ public class ImageActivity extends Activity {
 		protected int[] doInBackground(Bitmap... params) {
 			bitmap = params[0];
 
-			Palette palette = Palette.generate(bitmap, NUM_COLORS);
-
-			List<Palette.Swatch> swatches = new ArrayList<>(palette.getSwatches());
-			Collections.sort(swatches, GalleryUtils.getSwatchComparator());
+			PackedPalette palette = null;
 
-			int[] colors = new int[swatches.size()];
+			if (mId >= 0) {
+				// the same palette as in the gallery
+				palette = PaletteLoader.load(mId, mDateModified, NUM_COLORS);
+			}
 
-			for (int i = 0; i < colors.length; i++) {
-				colors[i] = swatches.get(i).getRgb();
+			if (palette == null) {
+				palette = PaletteLoader.generate(bitmap, NUM_COLORS);
 			}
 
-			return colors;
+			return palette.getColors();
 		}
 
 		@Override
@@ -450,6 +605,98 @@ public class ImageActivity extends Activity {
 	}
 
 	private File createOverlayFile() {
+		if (mColors == null) {
+			return null;
+		}
+
+		// determine where the view is on the image
+		final boolean drawPalette = mImageView != null && mSwatches != null;
+		final int[] colors = drawPalette ? mColors : new int[0];
+		final float fractionY = drawPalette ? getSwatchesPosition() : 0;
+
+		File file = getOutputMediaFile(getResources().getString(R.string.app_name), ".jpg");
+
+		try {
+			BitmapRegionDecoder decoder = newRegionDecoder();
+
+			// the platform encoder is native, so strips are only streamed through the Java
+			// encoder when the whole image does not fit in memory
+			if (decoder != null && fitsInMemory(decoder.getWidth(), decoder.getHeight())) {
+				decoder.recycle();
+				decoder = null;
+			}
+
+			if (decoder != null) {
+				FileOutputStream fileOutputStream = new FileOutputStream(file);
+				boolean written;
+
+				try {
+					written = new OverlayWriter(decoder, colors, fractionY)
+							.write(fileOutputStream, 80);
+				} finally {
+					decoder.recycle();
+					fileOutputStream.close();
+				}
+
+				if (written) {
+					return file;
+				}
+			}
+
+			// the image fits, or the format cannot be decoded by region, so decode all of it
+			if (writeOverlayBitmap(file, colors, fractionY)) {
+				return file;
+			}
+		} catch (FileNotFoundException e) {
+			Log.e(TAG, "Error creating file", e);
+			Toast.makeText(getApplicationContext(), "Save Failed", Toast.LENGTH_SHORT).show();
+		} catch (IOException e) {
+			Log.e(TAG, "Error creating file", e);
+			Toast.makeText(getApplicationContext(), "Save Failed", Toast.LENGTH_SHORT).show();
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return whether an ARGB_8888 bitmap of the size fits in the free heap, with as much again
+	 * left over for the encoder
+	 */
+	private static boolean fitsInMemory(int width, int height) {
+		final Runtime runtime = Runtime.getRuntime();
+		final long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+
+		return (long) width * height * 4 * 2 <= free;
+	}
+
+	/**
+	 * @return a region decoder for the image, or null if its format is not supported
+	 */
+	private BitmapRegionDecoder newRegionDecoder() {
+		try {
+			if (mPath != null) {
+				return BitmapRegionDecoder.newInstance(mPath, false);
+			} else if (mUri != null) {
+				InputStream inputStream = getContentResolver().openInputStream(mUri);
+
+				try {
+					return BitmapRegionDecoder.newInstance(inputStream, false);
+				} finally {
+					inputStream.close();
+				}
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Could not decode image by region", e);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Draws the palette on the whole image, which needs enough memory for all of it.
+	 */
+	private boolean writeOverlayBitmap(File file, int[] colors, float fractionY)
+			throws IOException {
 		Bitmap bitmap = null;
 
 		if (mPath != null) {
@@ -460,8 +707,8 @@ public class ImageActivity extends Activity {
 			bitmap = loadUri(mUri, -1, true);
 		}
 
-		if (bitmap == null || mColors == null) {
-			return null;
+		if (bitmap == null) {
+			return false;
 		}
 
 		Paint paint = new Paint();
@@ -469,42 +716,26 @@ public class ImageActivity extends Activity {
 		paint.setStyle(Paint.Style.FILL);
 		Canvas canvas = new Canvas(bitmap);
 
-		int diameter = bitmap.getWidth() / 8;
-		int margin = (bitmap.getWidth() - mColors.length * diameter) / mColors.length / 2;
-
-		// determine where the view is on the image
-		if (mImageView != null && mSwatches != null) {
+		if (colors.length > 0) {
+			int diameter = bitmap.getWidth() / 8;
+			int margin = (bitmap.getWidth() - colors.length * diameter) / colors.length / 2;
 
-			float fractionY = getSwatchesPosition();
-
-			for (int i = 0; i < mColors.length; i++) {
-				paint.setColor(mColors[i]);
+			for (int i = 0; i < colors.length; i++) {
+				paint.setColor(colors[i]);
 
 				canvas.drawCircle((2 * i + 1) * margin + i * diameter + diameter / 2,
 						bitmap.getHeight() * fractionY, diameter / 2, paint);
 			}
 		}
 
-		File file = getOutputMediaFile(getResources().getString(R.string.app_name), ".jpg");
-
-		try {
-			FileOutputStream fileOutputStream = new FileOutputStream(file);
+		FileOutputStream fileOutputStream = new FileOutputStream(file);
 
-			bitmap.compress(Bitmap.CompressFormat.JPEG, 80, fileOutputStream);
+		bitmap.compress(Bitmap.CompressFormat.JPEG, 80, fileOutputStream);
 
-			fileOutputStream.flush();
-			fileOutputStream.close();
+		fileOutputStream.flush();
+		fileOutputStream.close();
 
-			return file;
-		} catch (FileNotFoundException e) {
-			Log.e(TAG, "Error creating file", e);
-			Toast.makeText(getApplicationContext(), "Save Failed", Toast.LENGTH_SHORT).show();
-		} catch (IOException e) {
-			Log.e(TAG, "Error creating file", e);
-			Toast.makeText(getApplicationContext(), "Save Failed", Toast.LENGTH_SHORT).show();
-		}
-
-		return null;
+		return true;
 	}
 
 	private File createPaletteFile() {
@@ -0,0 +1,583 @@
+package com.dreamynomad.colorcam;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A baseline JPEG encoder that takes its pixels a few rows at a time, so that an image can be
+ * compressed without ever holding all of it in memory.
+ * <p/>
+ * The output is a JFIF file with 4:2:0 chroma subsampling and the standard quantization and
+ * Huffman tables, which is what {@link android.graphics.Bitmap#compress} writes as well. Edges
+ * that do not fill a whole 16x16 block are padded by repeating the last row and column, and
+ * the image keeps its exact size.
+ */
+public class JpegEncoder {
+
+	/**
+	 * Height of a row of blocks. Every call to {@link #write(int[], int)} but the last must
+	 * pass a multiple of this many rows.
+	 */
+	public static final int BLOCK_ROWS = 16;
+
+	private static final int[] ZIGZAG = {
+			0, 1, 8, 16, 9, 2, 3, 10,
+			17, 24, 32, 25, 18, 11, 4, 5,
+			12, 19, 26, 33, 40, 48, 41, 34,
+			27, 20, 13, 6, 7, 14, 21, 28,
+			35, 42, 49, 56, 57, 50, 43, 36,
+			29, 22, 15, 23, 30, 37, 44, 51,
+			58, 59, 52, 45, 38, 31, 39, 46,
+			53, 60, 61, 54, 47, 55, 62, 63
+	};
+
+	private static final int[] LUMINANCE_QUANTIZATION = {
+			16, 11, 10, 16, 24, 40, 51, 61,
+			12, 12, 14, 19, 26, 58, 60, 55,
+			14, 13, 16, 24, 40, 57, 69, 56,
+			14, 17, 22, 29, 51, 87, 80, 62,
+			18, 22, 37, 56, 68, 109, 103, 77,
+			24, 35, 55, 64, 81, 104, 113, 92,
+			49, 64, 78, 87, 103, 121, 120, 101,
+			72, 92, 95, 98, 112, 100, 103, 99
+	};
+
+	private static final int[] CHROMINANCE_QUANTIZATION = {
+			17, 18, 24, 47, 99, 99, 99, 99,
+			18, 21, 26, 66, 99, 99, 99, 99,
+			24, 26, 56, 99, 99, 99, 99, 99,
+			47, 66, 99, 99, 99, 99, 99, 99,
+			99, 99, 99, 99, 99, 99, 99, 99,
+			99, 99, 99, 99, 99, 99, 99, 99,
+			99, 99, 99, 99, 99, 99, 99, 99,
+			99, 99, 99, 99, 99, 99, 99, 99
+	};
+
+	private static final int[] DC_LUMINANCE_BITS = {
+			0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0
+	};
+
+	private static final int[] DC_CHROMINANCE_BITS = {
+			0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0
+	};
+
+	private static final int[] DC_VALUES = {
+			0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11
+	};
+
+	private static final int[] AC_LUMINANCE_BITS = {
+			0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d
+	};
+
+	private static final int[] AC_LUMINANCE_VALUES = {
+			0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12,
+			0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+			0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08,
+			0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+			0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16,
+			0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+			0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39,
+			0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+			0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59,
+			0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+			0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79,
+			0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+			0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98,
+			0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+			0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6,
+			0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+			0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4,
+			0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+			0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea,
+			0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+			0xf9, 0xfa
+	};
+
+	private static final int[] AC_CHROMINANCE_BITS = {
+			0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77
+	};
+
+	private static final int[] AC_CHROMINANCE_VALUES = {
+			0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21,
+			0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+			0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91,
+			0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+			0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34,
+			0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+			0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38,
+			0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+			0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58,
+			0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+			0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78,
+			0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+			0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96,
+			0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+			0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4,
+			0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+			0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2,
+			0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+			0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9,
+			0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+			0xf9, 0xfa
+	};
+
+	/**
+	 * Scale factors of the AAN forward DCT, which are folded into the quantization divisors.
+	 */
+	private static final double[] AAN_SCALES = {
+			1.0, 1.387039845, 1.306562965, 1.175875602,
+			1.0, 0.785694958, 0.541196100, 0.275899379
+	};
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final OutputStream mOutputStream;
+	private final int mWidth;
+	private final int mHeight;
+
+	private final int[] mLuminanceTable = new int[64];
+	private final int[] mChrominanceTable = new int[64];
+	private final float[] mLuminanceDivisors = new float[64];
+	private final float[] mChrominanceDivisors = new float[64];
+
+	private final int[] mDcLuminanceCodes = new int[256];
+	private final int[] mDcLuminanceSizes = new int[256];
+	private final int[] mDcChrominanceCodes = new int[256];
+	private final int[] mDcChrominanceSizes = new int[256];
+	private final int[] mAcLuminanceCodes = new int[256];
+	private final int[] mAcLuminanceSizes = new int[256];
+	private final int[] mAcChrominanceCodes = new int[256];
+	private final int[] mAcChrominanceSizes = new int[256];
+
+	private final float[] mBlock = new float[64];
+	private final int[] mCoefficients = new int[64];
+
+	private final byte[] mBuffer = new byte[BUFFER_SIZE];
+	private int mBufferLength;
+	private int mBits;
+	private int mBitCount;
+
+	private int mPreviousY;
+	private int mPreviousCb;
+	private int mPreviousCr;
+
+	private int mRowsWritten;
+	private boolean mStarted;
+
+	/**
+	 * @param outputStream the stream to write the JPEG to, which is not closed
+	 * @param width        width of the image
+	 * @param height       height of the image
+	 * @param quality      JPEG quality, between 0 and 100
+	 */
+	public JpegEncoder(OutputStream outputStream, int width, int height, int quality) {
+		if (width <= 0 || height <= 0 || width > 0xFFFF || height > 0xFFFF) {
+			throw new IllegalArgumentException("Unsupported size " + width + "x" + height);
+		}
+
+		mOutputStream = outputStream;
+		mWidth = width;
+		mHeight = height;
+
+		initQuantization(Math.max(1, Math.min(100, quality)));
+		initHuffman(DC_LUMINANCE_BITS, DC_VALUES, mDcLuminanceCodes, mDcLuminanceSizes);
+		initHuffman(DC_CHROMINANCE_BITS, DC_VALUES, mDcChrominanceCodes, mDcChrominanceSizes);
+		initHuffman(AC_LUMINANCE_BITS, AC_LUMINANCE_VALUES, mAcLuminanceCodes, mAcLuminanceSizes);
+		initHuffman(AC_CHROMINANCE_BITS, AC_CHROMINANCE_VALUES, mAcChrominanceCodes,
+				mAcChrominanceSizes);
+	}
+
+	/**
+	 * Encodes the next rows of the image.
+	 *
+	 * @param pixels ARGB pixels, {@code width} per row; alpha is ignored
+	 * @param rows   number of rows in the pixels, which must be a multiple of
+	 *               {@link #BLOCK_ROWS} unless they are the last rows of the image
+	 */
+	public void write(int[] pixels, int rows) throws IOException {
+		if (rows <= 0 || mRowsWritten + rows > mHeight ||
+				(rows % BLOCK_ROWS != 0 && mRowsWritten + rows != mHeight)) {
+			throw new IllegalArgumentException("Cannot write " + rows + " rows after " +
+					mRowsWritten + " of " + mHeight);
+		}
+
+		if (!mStarted) {
+			writeHeaders();
+			mStarted = true;
+		}
+
+		for (int top = 0; top < rows; top += BLOCK_ROWS) {
+			for (int left = 0; left < mWidth; left += 16) {
+				for (int i = 0; i < 4; i++) {
+					loadLuminance(pixels, rows, left + (i & 1) * 8, top + (i >> 1) * 8);
+					mPreviousY = encodeBlock(mLuminanceDivisors, mPreviousY,
+							mDcLuminanceCodes, mDcLuminanceSizes,
+							mAcLuminanceCodes, mAcLuminanceSizes);
+				}
+
+				loadChrominance(pixels, rows, left, top, true);
+				mPreviousCb = encodeBlock(mChrominanceDivisors, mPreviousCb,
+						mDcChrominanceCodes, mDcChrominanceSizes,
+						mAcChrominanceCodes, mAcChrominanceSizes);
+
+				loadChrominance(pixels, rows, left, top, false);
+				mPreviousCr = encodeBlock(mChrominanceDivisors, mPreviousCr,
+						mDcChrominanceCodes, mDcChrominanceSizes,
+						mAcChrominanceCodes, mAcChrominanceSizes);
+			}
+		}
+
+		mRowsWritten += rows;
+	}
+
+	/**
+	 * Ends the image once all of its rows are written, and flushes the stream.
+	 */
+	public void finish() throws IOException {
+		if (mRowsWritten != mHeight) {
+			throw new IllegalStateException("Only " + mRowsWritten + " of " + mHeight +
+					" rows were written");
+		}
+
+		// pad the last byte with ones
+		if (mBitCount > 0) {
+			writeBits(0x7F, 7);
+		}
+
+		writeMarker(0xD9);
+		flushBuffer();
+		mOutputStream.flush();
+	}
+
+	private void initQuantization(int quality) {
+		final int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+
+		for (int i = 0; i < 64; i++) {
+			mLuminanceTable[i] = scale(LUMINANCE_QUANTIZATION[i], scale);
+			mChrominanceTable[i] = scale(CHROMINANCE_QUANTIZATION[i], scale);
+
+			final double aan = AAN_SCALES[i >> 3] * AAN_SCALES[i & 7] * 8;
+			mLuminanceDivisors[i] = (float) (1 / (mLuminanceTable[i] * aan));
+			mChrominanceDivisors[i] = (float) (1 / (mChrominanceTable[i] * aan));
+		}
+	}
+
+	private static int scale(int value, int scale) {
+		return Math.max(1, Math.min(255, (value * scale + 50) / 100));
+	}
+
+	/**
+	 * Builds the code of each symbol from the number of codes of each length, as in annex C of
+	 * the JPEG specification.
+	 */
+	private static void initHuffman(int[] bits, int[] values, int[] codes, int[] sizes) {
+		int code = 0;
+		int k = 0;
+
+		for (int length = 1; length <= 16; length++) {
+			for (int i = 0; i < bits[length - 1]; i++) {
+				codes[values[k]] = code++;
+				sizes[values[k]] = length;
+				k++;
+			}
+			code <<= 1;
+		}
+	}
+
+	private void writeHeaders() throws IOException {
+		writeMarker(0xD8);
+
+		// JFIF APP0, version 1.1, no density or thumbnail
+		writeMarker(0xE0);
+		writeShort(16);
+		writeByte('J');
+		writeByte('F');
+		writeByte('I');
+		writeByte('F');
+		writeByte(0);
+		writeByte(1);
+		writeByte(1);
+		writeByte(0);
+		writeShort(1);
+		writeShort(1);
+		writeByte(0);
+		writeByte(0);
+
+		writeMarker(0xDB);
+		writeShort(2 + 2 * 65);
+		writeByte(0);
+		for (int i = 0; i < 64; i++) {
+			writeByte(mLuminanceTable[ZIGZAG[i]]);
+		}
+		writeByte(1);
+		for (int i = 0; i < 64; i++) {
+			writeByte(mChrominanceTable[ZIGZAG[i]]);
+		}
+
+		// baseline frame with Y sampled 2x2 and Cb and Cr sampled 1x1
+		writeMarker(0xC0);
+		writeShort(17);
+		writeByte(8);
+		writeShort(mHeight);
+		writeShort(mWidth);
+		writeByte(3);
+		writeByte(1);
+		writeByte(0x22);
+		writeByte(0);
+		writeByte(2);
+		writeByte(0x11);
+		writeByte(1);
+		writeByte(3);
+		writeByte(0x11);
+		writeByte(1);
+
+		writeMarker(0xC4);
+		writeShort(2 + 4 * 17 + DC_VALUES.length * 2 + AC_LUMINANCE_VALUES.length +
+				AC_CHROMINANCE_VALUES.length);
+		writeHuffmanTable(0x00, DC_LUMINANCE_BITS, DC_VALUES);
+		writeHuffmanTable(0x10, AC_LUMINANCE_BITS, AC_LUMINANCE_VALUES);
+		writeHuffmanTable(0x01, DC_CHROMINANCE_BITS, DC_VALUES);
+		writeHuffmanTable(0x11, AC_CHROMINANCE_BITS, AC_CHROMINANCE_VALUES);
+
+		writeMarker(0xDA);
+		writeShort(12);
+		writeByte(3);
+		writeByte(1);
+		writeByte(0x00);
+		writeByte(2);
+		writeByte(0x11);
+		writeByte(3);
+		writeByte(0x11);
+		writeByte(0);
+		writeByte(63);
+		writeByte(0);
+	}
+
+	private void writeHuffmanTable(int id, int[] bits, int[] values) throws IOException {
+		writeByte(id);
+		for (int count : bits) {
+			writeByte(count);
+		}
+		for (int value : values) {
+			writeByte(value);
+		}
+	}
+
+	/**
+	 * Loads an 8x8 block of level shifted luminance, repeating the last row and column of the
+	 * image where the block goes past them.
+	 */
+	private void loadLuminance(int[] pixels, int rows, int left, int top) {
+		for (int y = 0; y < 8; y++) {
+			final int row = Math.min(top + y, rows - 1) * mWidth;
+
+			for (int x = 0; x < 8; x++) {
+				final int pixel = pixels[row + Math.min(left + x, mWidth - 1)];
+
+				mBlock[y * 8 + x] = (19595 * ((pixel >> 16) & 0xFF) +
+						38470 * ((pixel >> 8) & 0xFF) + 7471 * (pixel & 0xFF)) /
+						65536f - 128;
+			}
+		}
+	}
+
+	/**
+	 * Loads the 8x8 block of level shifted chrominance for a 16x16 block of pixels, averaging
+	 * each 2x2 group of pixels.
+	 *
+	 * @param blue whether to load Cb rather than Cr
+	 */
+	private void loadChrominance(int[] pixels, int rows, int left, int top, boolean blue) {
+		for (int y = 0; y < 8; y++) {
+			final int row0 = Math.min(top + y * 2, rows - 1) * mWidth;
+			final int row1 = Math.min(top + y * 2 + 1, rows - 1) * mWidth;
+
+			for (int x = 0; x < 8; x++) {
+				final int x0 = Math.min(left + x * 2, mWidth - 1);
+				final int x1 = Math.min(left + x * 2 + 1, mWidth - 1);
+
+				final int p0 = pixels[row0 + x0];
+				final int p1 = pixels[row0 + x1];
+				final int p2 = pixels[row1 + x0];
+				final int p3 = pixels[row1 + x1];
+
+				final int r = ((p0 >> 16) & 0xFF) + ((p1 >> 16) & 0xFF) +
+						((p2 >> 16) & 0xFF) + ((p3 >> 16) & 0xFF);
+				final int g = ((p0 >> 8) & 0xFF) + ((p1 >> 8) & 0xFF) +
+						((p2 >> 8) & 0xFF) + ((p3 >> 8) & 0xFF);
+				final int b = (p0 & 0xFF) + (p1 & 0xFF) + (p2 & 0xFF) + (p3 & 0xFF);
+
+				// sums of four pixels, so divide by four more
+				mBlock[y * 8 + x] = blue ?
+						(-11059 * r - 21709 * g + 32768 * b) / 262144f :
+						(32768 * r - 27439 * g - 5329 * b) / 262144f;
+			}
+		}
+	}
+
+	/**
+	 * Transforms, quantizes and writes the loaded block.
+	 *
+	 * @return the DC coefficient of the block, which the next block of the component is
+	 * relative to
+	 */
+	private int encodeBlock(float[] divisors, int previousDc, int[] dcCodes, int[] dcSizes,
+							int[] acCodes, int[] acSizes) throws IOException {
+		forwardDct(mBlock);
+
+		for (int i = 0; i < 64; i++) {
+			final int index = ZIGZAG[i];
+			mCoefficients[i] = Math.round(mBlock[index] * divisors[index]);
+		}
+
+		final int dc = mCoefficients[0];
+		final int diff = dc - previousDc;
+		final int dcSize = bitSize(diff);
+		writeBits(dcCodes[dcSize], dcSizes[dcSize]);
+		writeBits(diff < 0 ? diff - 1 : diff, dcSize);
+
+		int end = 63;
+		while (end > 0 && mCoefficients[end] == 0) {
+			end--;
+		}
+
+		int run = 0;
+		for (int i = 1; i <= end; i++) {
+			final int value = mCoefficients[i];
+
+			if (value == 0) {
+				run++;
+				continue;
+			}
+
+			while (run > 15) {
+				writeBits(acCodes[0xF0], acSizes[0xF0]);
+				run -= 16;
+			}
+
+			final int size = bitSize(value);
+			final int symbol = (run << 4) | size;
+			writeBits(acCodes[symbol], acSizes[symbol]);
+			writeBits(value < 0 ? value - 1 : value, size);
+			run = 0;
+		}
+
+		if (end < 63) {
+			writeBits(acCodes[0x00], acSizes[0x00]);
+		}
+
+		return dc;
+	}
+
+	/**
+	 * @return the number of bits in the magnitude of the value
+	 */
+	private static int bitSize(int value) {
+		return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+	}
+
+	/**
+	 * The floating point AAN forward DCT, leaving out the scale factors of the outputs.
+	 */
+	private static void forwardDct(float[] data) {
+		for (int i = 0; i < 64; i += 8) {
+			forwardDct(data, i, 1);
+		}
+		for (int i = 0; i < 8; i++) {
+			forwardDct(data, i, 8);
+		}
+	}
+
+	private static void forwardDct(float[] data, int offset, int stride) {
+		final int i0 = offset;
+		final int i1 = offset + stride;
+		final int i2 = offset + stride * 2;
+		final int i3 = offset + stride * 3;
+		final int i4 = offset + stride * 4;
+		final int i5 = offset + stride * 5;
+		final int i6 = offset + stride * 6;
+		final int i7 = offset + stride * 7;
+
+		final float tmp0 = data[i0] + data[i7];
+		final float tmp7 = data[i0] - data[i7];
+		final float tmp1 = data[i1] + data[i6];
+		final float tmp6 = data[i1] - data[i6];
+		final float tmp2 = data[i2] + data[i5];
+		final float tmp5 = data[i2] - data[i5];
+		final float tmp3 = data[i3] + data[i4];
+		final float tmp4 = data[i3] - data[i4];
+
+		// even part
+		float tmp10 = tmp0 + tmp3;
+		final float tmp13 = tmp0 - tmp3;
+		float tmp11 = tmp1 + tmp2;
+		float tmp12 = tmp1 - tmp2;
+
+		data[i0] = tmp10 + tmp11;
+		data[i4] = tmp10 - tmp11;
+
+		final float z1 = (tmp12 + tmp13) * 0.707106781f;
+		data[i2] = tmp13 + z1;
+		data[i6] = tmp13 - z1;
+
+		// odd part
+		tmp10 = tmp4 + tmp5;
+		tmp11 = tmp5 + tmp6;
+		tmp12 = tmp6 + tmp7;
+
+		final float z5 = (tmp10 - tmp12) * 0.382683433f;
+		final float z2 = 0.541196100f * tmp10 + z5;
+		final float z4 = 1.306562965f * tmp12 + z5;
+		final float z3 = tmp11 * 0.707106781f;
+
+		final float z11 = tmp7 + z3;
+		final float z13 = tmp7 - z3;
+
+		data[i5] = z13 + z2;
+		data[i3] = z13 - z2;
+		data[i1] = z11 + z4;
+		data[i7] = z11 - z4;
+	}
+
+	/**
+	 * Writes the low bits of the value to the entropy coded data, stuffing a zero after each
+	 * 0xFF byte.
+	 */
+	private void writeBits(int value, int count) throws IOException {
+		mBits = (mBits << count) | (value & ((1 << count) - 1));
+		mBitCount += count;
+
+		while (mBitCount >= 8) {
+			final int b = (mBits >> (mBitCount - 8)) & 0xFF;
+			writeByte(b);
+			if (b == 0xFF) {
+				writeByte(0);
+			}
+			mBitCount -= 8;
+		}
+
+		mBits &= (1 << mBitCount) - 1;
+	}
+
+	private void writeMarker(int marker) throws IOException {
+		writeByte(0xFF);
+		writeByte(marker);
+	}
+
+	private void writeShort(int value) throws IOException {
+		writeByte(value >> 8);
+		writeByte(value);
+	}
+
+	private void writeByte(int value) throws IOException {
+		if (mBufferLength == BUFFER_SIZE) {
+			flushBuffer();
+		}
+		mBuffer[mBufferLength++] = (byte) value;
+	}
+
+	private void flushBuffer() throws IOException {
+		mOutputStream.write(mBuffer, 0, mBufferLength);
+		mBufferLength = 0;
+	}
+}
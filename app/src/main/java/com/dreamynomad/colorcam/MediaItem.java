@@ -12,15 +12,18 @@ public class MediaItem implements Parcelable {
 
 	private final long mId;
 	private final String mPath;
+	private final long mDateModified;
 
-	public MediaItem(long id, String path) {
+	public MediaItem(long id, String path, long dateModified) {
 		this.mId = id;
 		this.mPath = path;
+		this.mDateModified = dateModified;
 	}
 
 	public MediaItem(Parcel in) {
 		mId = in.readLong();
 		mPath = in.readString();
+		mDateModified = in.readLong();
 	}
 
 	public long getId() {
@@ -31,6 +34,10 @@ public class MediaItem implements Parcelable {
 		return mPath;
 	}
 
+	public long getDateModified() {
+		return mDateModified;
+	}
+
 	@Override
 	public int describeContents() {
 		return 0;
@@ -40,6 +47,7 @@ public class MediaItem implements Parcelable {
 	public void writeToParcel(Parcel dest, int flags) {
 		dest.writeLong(mId);
 		dest.writeString(mPath);
+		dest.writeLong(mDateModified);
 	}
 
 	public static final Parcelable.Creator<MediaItem> CREATOR =
@@ -0,0 +1,28 @@
+package com.dreamynomad.colorcam;
+
+/**
+ * Images from the device {@link android.provider.MediaStore}, read by position, so that the
+ * gallery does not need an object for every image.
+ */
+public interface MediaList {
+
+	/**
+	 * @return the number of images
+	 */
+	int size();
+
+	/**
+	 * @return the {@link android.provider.MediaStore} id of the image at the position
+	 */
+	long getId(int position);
+
+	/**
+	 * @return the path of the image at the position, which may be null
+	 */
+	String getPath(int position);
+
+	/**
+	 * @return the modification date of the image at the position
+	 */
+	long getDateModified(int position);
+}
@@ -0,0 +1,51 @@
+package com.dreamynomad.colorcam;
+
+import java.util.Arrays;
+
+/**
+ * Position of each image of a {@link MediaList} by id, built on a background thread so that
+ * the items on screen can be found in a list that replaces them without reading all of it.
+ */
+public class MediaPositions {
+
+	/**
+	 * Ids in ascending order, and the position of each in the list.
+	 */
+	private final long[] mIds;
+	private final int[] mPositions;
+
+	private MediaPositions(long[] ids, int[] positions) {
+		mIds = ids;
+		mPositions = positions;
+	}
+
+	/**
+	 * Reads the id of every image, which are unique in a list. Called on a background thread.
+	 */
+	public static MediaPositions of(MediaList mediaList) {
+		final int size = mediaList.size();
+		final long[] ids = new long[size];
+
+		for (int i = 0; i < size; i++) {
+			ids[i] = mediaList.getId(i);
+		}
+
+		final long[] sorted = ids.clone();
+		Arrays.sort(sorted);
+
+		final int[] positions = new int[size];
+		for (int i = 0; i < size; i++) {
+			positions[Arrays.binarySearch(sorted, ids[i])] = i;
+		}
+
+		return new MediaPositions(sorted, positions);
+	}
+
+	/**
+	 * @return the position of the image with the id, or -1 if it is not in the list
+	 */
+	public int positionOf(long id) {
+		final int index = Arrays.binarySearch(mIds, id);
+		return index >= 0 ? mPositions[index] : -1;
+	}
+}
@@ -0,0 +1,186 @@
+package com.dreamynomad.colorcam;
+
+import android.database.Cursor;
+import android.provider.MediaStore;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Immutable copy of the images in the {@link android.provider.MediaStore}, stored by column so
+ * that an image costs a few bytes plus the characters of its file name, instead of an object
+ * and a full path.
+ * <p/>
+ * Paths are split into a shared directory and a file name; the file names are kept together in
+ * one {@code char[]}, and a path is only built when it is read. A snapshot can also be a
+ * selection of the positions of another one, which shares its columns.
+ */
+public class MediaSnapshot implements MediaList {
+
+	public static final MediaSnapshot EMPTY = new MediaSnapshot(new long[0], new long[0],
+			new int[0], new String[0], new int[1], new char[0], null);
+
+	private final long[] mIds;
+	private final long[] mDatesModified;
+
+	// path of each image, as a directory and a range of mNames
+	private final int[] mDirectories;
+	private final String[] mDirectoryNames;
+	private final int[] mNameStart;
+	private final char[] mNames;
+
+	/**
+	 * Positions in the columns of the selected images, or null for all of them.
+	 */
+	private final int[] mPositions;
+
+	private MediaSnapshot(long[] ids, long[] datesModified, int[] directories,
+	                      String[] directoryNames, int[] nameStart, char[] names,
+	                      int[] positions) {
+		mIds = ids;
+		mDatesModified = datesModified;
+		mDirectories = directories;
+		mDirectoryNames = directoryNames;
+		mNameStart = nameStart;
+		mNames = names;
+		mPositions = positions;
+	}
+
+	/**
+	 * Reads every row of a cursor with the columns of {@link CursorMediaList#PROJECTION}.
+	 * Called on a background thread.
+	 */
+	public static MediaSnapshot fromCursor(Cursor cursor) {
+		final int count = cursor.getCount();
+
+		if (count <= 0) {
+			return EMPTY;
+		}
+
+		final int idIdx = cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
+		final int dataIdx = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
+		final int dateModifiedIdx =
+				cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_MODIFIED);
+
+		final long[] ids = new long[count];
+		final long[] datesModified = new long[count];
+		final int[] directories = new int[count];
+		final int[] nameStart = new int[count + 1];
+		char[] names = new char[count * 16];
+
+		// most images are in a few directories, usually next to each other
+		final HashMap<String, Integer> directoryIndex = new HashMap<>();
+		String[] directoryNames = new String[8];
+		int directoryCount = 0;
+		int lastDirectory = -1;
+
+		int position = 0;
+		int nameLength = 0;
+
+		while (position < count && cursor.moveToNext()) {
+			ids[position] = cursor.getLong(idIdx);
+			datesModified[position] = cursor.getLong(dateModifiedIdx);
+
+			String path = cursor.getString(dataIdx);
+			if (path == null) {
+				path = "";
+			}
+
+			// the directory keeps its trailing separator
+			final int split = path.lastIndexOf('/') + 1;
+
+			if (lastDirectory >= 0 && directoryNames[lastDirectory].length() == split &&
+					path.startsWith(directoryNames[lastDirectory])) {
+				directories[position] = lastDirectory;
+			} else {
+				final String directory = path.substring(0, split);
+				Integer index = directoryIndex.get(directory);
+
+				if (index == null) {
+					if (directoryCount == directoryNames.length) {
+						directoryNames = Arrays.copyOf(directoryNames, directoryCount * 2);
+					}
+
+					index = directoryCount;
+					directoryNames[directoryCount++] = directory;
+					directoryIndex.put(directory, index);
+				}
+
+				lastDirectory = directories[position] = index;
+			}
+
+			final int length = path.length() - split;
+
+			if (nameLength + length > names.length) {
+				names = Arrays.copyOf(names, Math.max(names.length * 2, nameLength + length));
+			}
+
+			path.getChars(split, path.length(), names, nameLength);
+			nameLength += length;
+			nameStart[++position] = nameLength;
+		}
+
+		if (position < count) {
+			// the cursor ended early
+			return new MediaSnapshot(Arrays.copyOf(ids, position),
+					Arrays.copyOf(datesModified, position), Arrays.copyOf(directories, position),
+					Arrays.copyOf(directoryNames, directoryCount),
+					Arrays.copyOf(nameStart, position + 1), Arrays.copyOf(names, nameLength),
+					null);
+		}
+
+		return new MediaSnapshot(ids, datesModified, directories,
+				Arrays.copyOf(directoryNames, directoryCount), nameStart,
+				Arrays.copyOf(names, nameLength), null);
+	}
+
+	/**
+	 * @param positions positions in this snapshot, in the order that they should appear
+	 * @return a snapshot of the images at the positions, sharing the columns of this one
+	 */
+	public MediaSnapshot select(int[] positions) {
+		final int[] selected = new int[positions.length];
+
+		for (int i = 0; i < positions.length; i++) {
+			selected[i] = column(positions[i]);
+		}
+
+		return new MediaSnapshot(mIds, mDatesModified, mDirectories, mDirectoryNames,
+				mNameStart, mNames, selected);
+	}
+
+	@Override
+	public int size() {
+		return mPositions != null ? mPositions.length : mIds.length;
+	}
+
+	@Override
+	public long getId(int position) {
+		return mIds[column(position)];
+	}
+
+	@Override
+	public String getPath(int position) {
+		final int column = column(position);
+		final int start = mNameStart[column];
+		final int end = mNameStart[column + 1];
+
+		if (end == start) {
+			return null;
+		}
+
+		return new StringBuilder(mDirectoryNames[mDirectories[column]].length() + end - start)
+				.append(mDirectoryNames[mDirectories[column]])
+				.append(mNames, start, end - start)
+				.toString();
+	}
+
+	@Override
+	public long getDateModified(int position) {
+		return mDatesModified[column(position)];
+	}
+
+	private int column(int position) {
+		return mPositions != null ? mPositions[position] : position;
+	}
+}
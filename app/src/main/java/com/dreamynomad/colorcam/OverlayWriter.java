@@ -0,0 +1,142 @@
+package com.dreamynomad.colorcam;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes an image with a palette drawn over it as a JPEG, without decoding the whole image into
+ * a single bitmap.
+ * <p/>
+ * The image is decoded in horizontal strips with a {@link android.graphics.BitmapRegionDecoder},
+ * and the palette is only drawn on the strips that it intersects. Each strip is handed to a
+ * {@link JpegEncoder} as soon as it is drawn, so only one strip is ever in memory, whatever the
+ * size of the image.
+ */
+public class OverlayWriter {
+
+	/**
+	 * Height of a strip, which must be a multiple of {@link JpegEncoder#BLOCK_ROWS}.
+	 */
+	private static final int STRIP_HEIGHT = 256;
+
+	private final BitmapRegionDecoder mDecoder;
+	private final int[] mColors;
+	private final float mFractionY;
+
+	/**
+	 * @param decoder   decoder for the source image
+	 * @param colors    the palette colors to draw, which may be empty
+	 * @param fractionY the vertical center of the palette, as a fraction of the image height
+	 */
+	public OverlayWriter(BitmapRegionDecoder decoder, int[] colors, float fractionY) {
+		mDecoder = decoder;
+		mColors = colors;
+		mFractionY = fractionY;
+	}
+
+	/**
+	 * @param outputStream the stream to write the JPEG to
+	 * @param quality      JPEG quality, between 0 and 100
+	 * @return whether the image was written, which is false if its size is not supported or a
+	 * strip could not be decoded
+	 */
+	public boolean write(OutputStream outputStream, int quality) throws IOException {
+		final int width = mDecoder.getWidth();
+		final int height = mDecoder.getHeight();
+
+		// JPEG sizes are 16 bit
+		if (width <= 0 || height <= 0 || width > 0xFFFF || height > 0xFFFF) {
+			return false;
+		}
+
+		final JpegEncoder encoder = new JpegEncoder(outputStream, width, height, quality);
+		final int[] pixels = new int[width * STRIP_HEIGHT];
+
+		final Paint paint = new Paint();
+		paint.setAntiAlias(true);
+		paint.setStyle(Paint.Style.FILL);
+
+		// same geometry as the palette in the activity
+		final int diameter = mDecoder.getWidth() / 8;
+		final int margin = mColors.length > 0 ?
+				(mDecoder.getWidth() - mColors.length * diameter) / mColors.length / 2 : 0;
+		final float centerY = mDecoder.getHeight() * mFractionY;
+		final float radius = diameter / 2;
+
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+
+		// region decodes are immutable before Android O unless they reuse a mutable bitmap
+		final boolean reuseStrip = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+		final Rect region = new Rect();
+		Bitmap strip = null;
+
+		try {
+			if (reuseStrip) {
+				// the last strip is shorter, and is clipped to the reused bitmap
+				strip = Bitmap.createBitmap(width, Math.min(STRIP_HEIGHT, height),
+						Bitmap.Config.ARGB_8888);
+				options.inBitmap = strip;
+			}
+
+			for (int top = 0; top < height; top += STRIP_HEIGHT) {
+				final int rows = Math.min(STRIP_HEIGHT, height - top);
+				region.set(0, top, width, top + rows);
+
+				final Bitmap decoded = mDecoder.decodeRegion(region, options);
+
+				if (decoded == null) {
+					return false;
+				}
+
+				if (decoded != strip) {
+					if (strip != null) {
+						strip.recycle();
+					}
+					strip = decoded;
+				}
+
+				// only the strips that intersect the palette need to be drawn on
+				if (mColors.length > 0 &&
+						centerY + radius >= top && centerY - radius < top + rows) {
+					if (!strip.isMutable()) {
+						final Bitmap copy = strip.copy(Bitmap.Config.ARGB_8888, true);
+						strip.recycle();
+						strip = copy;
+
+						if (strip == null) {
+							return false;
+						}
+					}
+
+					final Canvas canvas = new Canvas(strip);
+					canvas.translate(0, -top);
+
+					for (int i = 0; i < mColors.length; i++) {
+						paint.setColor(mColors[i]);
+
+						canvas.drawCircle((2 * i + 1) * margin + i * diameter + diameter / 2,
+								centerY, radius, paint);
+					}
+				}
+
+				strip.getPixels(pixels, 0, width, 0, 0, width, rows);
+				encoder.write(pixels, rows);
+			}
+		} finally {
+			if (strip != null) {
+				strip.recycle();
+			}
+		}
+
+		encoder.finish();
+		return true;
+	}
@@ -0,0 +1,156 @@
+package com.dreamynomad.colorcam;
+
+import android.graphics.Bitmap;
+
+import com.dreamynomad.colorcam.cache.BitmapPool;
+import com.dreamynomad.colorcam.cache.PaletteDiskCache;
+import com.dreamynomad.colorcam.cache.PaletteLruCache;
+import com.dreamynomad.colorcam.palette.ColorCutQuantizer;
+import com.dreamynomad.colorcam.palette.PackedPalette;
+import com.dreamynomad.colorcam.palette.PaletteOrder;
+
+/**
+ * Loads palettes from a fixed budget of pixels, independent of the bitmap that is displayed.
+ * <p/>
+ * Images in the {@link android.provider.MediaStore} get their palette from the
+ * {@link android.provider.MediaStore.Images.Thumbnails#MICRO_KIND} thumbnail, so quantizing
+ * takes the same time for every image, and the gallery and the image screen show the same
+ * palette through the shared caches.
+ */
+public class PaletteLoader {
+
+	/**
+	 * Palettes are generated from at most this many pixels, the size of a
+	 * {@link android.provider.MediaStore.Images.Thumbnails#MICRO_KIND} thumbnail.
+	 */
+	public static final int PIXEL_BUDGET =
+			GalleryUtils.MICRO_KIND_SIZE * GalleryUtils.MICRO_KIND_SIZE;
+
+	private static final ThreadLocal<int[]> sPixels = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[PIXEL_BUDGET];
+		}
+	};
+
+	/**
+	 * Finds a palette in memory or on disk, without generating it.
+	 *
+	 * @param imageId      the {@link android.provider.MediaStore} id of the image
+	 * @param dateModified the modification date of the image
+	 * @return the palette, or null if it has not been generated
+	 */
+	public static PackedPalette getCached(long imageId, long dateModified) {
+		final PaletteLruCache memoryCache = PaletteLruCache.getInstance();
+		PackedPalette palette = memoryCache.get(imageId, dateModified);
+
+		if (palette == null) {
+			// palettes computed by a previous process are on disk
+			palette = PaletteDiskCache.getInstance().get(imageId, dateModified);
+
+			if (palette != null) {
+				memoryCache.put(imageId, dateModified, palette);
+			}
+		}
+
+		return palette;
+	}
+
+	/**
+	 * Finds a palette in the caches, or generates it from the micro thumbnail and caches it.
+	 * Called on a background thread.
+	 *
+	 * @param imageId      the {@link android.provider.MediaStore} id of the image
+	 * @param dateModified the modification date of the image
+	 * @param maxColors    the maximum number of colors in the palette
+	 * @return the sorted palette, or null if there is no thumbnail
+	 */
+	public static PackedPalette load(long imageId, long dateModified, int maxColors) {
+		PackedPalette palette = getCached(imageId, dateModified);
+
+		if (palette != null) {
+			return palette;
+		}
+
+		final Bitmap thumbnail = GalleryUtils.getMicroThumbnail(imageId);
+
+		if (thumbnail == null) {
+			return null;
+		}
+
+		palette = generate(thumbnail, maxColors);
+
+		// only needed for its pixels, which have been read
+		BitmapPool.getInstance().put(thumbnail);
+
+		PaletteLruCache.getInstance().put(imageId, dateModified, palette);
+		PaletteDiskCache.getInstance().put(imageId, dateModified, palette);
+
+		return palette;
+	}
+
+	/**
+	 * Generates the palette of an image and stores it on disk, unless it is already there. The
+	 * memory cache is left alone, so that indexing does not evict palettes that are on screen.
+	 * Called on a background thread.
+	 *
+	 * @param imageId      the {@link android.provider.MediaStore} id of the image
+	 * @param dateModified the modification date of the image
+	 * @param maxColors    the maximum number of colors in the palette
+	 * @return whether a palette was generated
+	 */
+	public static boolean index(long imageId, long dateModified, int maxColors) {
+		final PaletteDiskCache diskCache = PaletteDiskCache.getInstance();
+
+		if (diskCache.contains(imageId, dateModified)) {
+			return false;
+		}
+
+		final Bitmap thumbnail = GalleryUtils.getMicroThumbnail(imageId);
+
+		if (thumbnail == null) {
+			return false;
+		}
+
+		final PackedPalette palette = generate(thumbnail, maxColors);
+		BitmapPool.getInstance().put(thumbnail);
+
+		diskCache.put(imageId, dateModified, palette);
+
+		return true;
+	}
+
+	/**
+	 * Generates the palette of a bitmap after scaling it down to the pixel budget, for images
+	 * that are not in the {@link android.provider.MediaStore}.
+	 *
+	 * @param bitmap    the image to generate a palette from
+	 * @param maxColors the maximum number of colors in the palette
+	 * @return the sorted palette
+	 */
+	public static PackedPalette generate(Bitmap bitmap, int maxColors) {
+		final int pixelCount = bitmap.getWidth() * bitmap.getHeight();
+
+		Bitmap scaled = bitmap;
+		if (pixelCount > PIXEL_BUDGET) {
+			final double scaleRatio = Math.sqrt(PIXEL_BUDGET / (double) pixelCount);
+			// a very long image still has to stay within the budget
+			final int width = Math.min(PIXEL_BUDGET,
+					Math.max(1, (int) (bitmap.getWidth() * scaleRatio)));
+			final int height = Math.max(1, Math.min(PIXEL_BUDGET / width,
+					(int) (bitmap.getHeight() * scaleRatio)));
+			scaled = Bitmap.createScaledBitmap(bitmap, width, height, false);
+		}
+
+		final int width = scaled.getWidth();
+		final int height = scaled.getHeight();
+		final int[] pixels = sPixels.get();
+		scaled.getPixels(pixels, 0, width, 0, 0, width, height);
+
+		if (scaled != bitmap) {
+			scaled.recycle();
+		}
+
+		return PaletteOrder.sort(ColorCutQuantizer.generate(pixels, width * height, maxColors));
+	}
+}
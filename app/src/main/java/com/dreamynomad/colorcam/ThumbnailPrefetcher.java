@@ -0,0 +1,145 @@
+package com.dreamynomad.colorcam;
+
+import android.os.SystemClock;
+import android.view.View;
+
+import com.dreamynomad.colorcam.executor.DecodeExecutor;
+import com.dreamynomad.colorcam.layoutmanager.FastGridLayoutManager;
+import com.dreamynomad.colorcam.layoutmanager.LinearLayoutManager;
+
+/**
+ * Loads thumbnails and palettes for the rows that are about to scroll into view, so that they
+ * do not appear blank.
+ * <p/>
+ * The number of rows loaded ahead grows with the scroll velocity, and pending prefetches are
+ * dropped when the scroll direction reverses.
+ */
+public class ThumbnailPrefetcher implements LinearLayoutManager.OnScrollByListener {
+
+	/**
+	 * Rows that are always loaded ahead while scrolling.
+	 */
+	private static final int DEFAULT_MIN_ROWS = 1;
+
+	/**
+	 * Upper bound on rows loaded ahead during a fast fling.
+	 */
+	private static final int DEFAULT_MAX_ROWS = 4;
+
+	/**
+	 * How far ahead in time the prefetched rows should cover, in ms.
+	 */
+	private static final int LOOKAHEAD_TIME = 300;
+
+	/**
+	 * Weight of the latest sample in the smoothed velocity.
+	 */
+	private static final float VELOCITY_SMOOTHING = 0.3f;
+
+	private final GalleryAdapter mAdapter;
+	private final FastGridLayoutManager mLayoutManager;
+
+	private int mMinRows = DEFAULT_MIN_ROWS;
+	private int mMaxRows = DEFAULT_MAX_ROWS;
+
+	private int mDirection;
+	private float mVelocity; // in pixels per ms
+	private long mLastScrollTime;
+
+	/**
+	 * The furthest position queued in the current direction. Queued prefetches run once the
+	 * decodes for bound positions are done, unless the direction changes.
+	 */
+	private int mPrefetchedPosition = -1;
+
+	public ThumbnailPrefetcher(GalleryAdapter adapter, FastGridLayoutManager layoutManager) {
+		mAdapter = adapter;
+		mLayoutManager = layoutManager;
+	}
+
+	/**
+	 * @param minRows rows that are always loaded ahead while scrolling
+	 * @param maxRows rows loaded ahead during a fast fling
+	 */
+	public void setRowsAhead(int minRows, int maxRows) {
+		if (minRows < 0 || maxRows < minRows) {
+			throw new IllegalArgumentException("Invalid rows ahead: " + minRows + ", " + maxRows);
+		}
+
+		mMinRows = minRows;
+		mMaxRows = maxRows;
+	}
+
+	/**
+	 * Drops pending prefetches, such as when the items change.
+	 */
+	public void reset() {
+		DecodeExecutor.getInstance().cancelPrefetches();
+		mDirection = 0;
+		mVelocity = 0;
+		mPrefetchedPosition = -1;
+	}
+
+	@Override
+	public void onScrollBy(int scrolled) {
+		final long now = SystemClock.uptimeMillis();
+		final int direction = scrolled > 0 ? 1 : -1;
+
+		if (direction != mDirection) {
+			// what was ahead is now behind
+			DecodeExecutor.getInstance().cancelPrefetches();
+			mDirection = direction;
+			mVelocity = 0;
+			mPrefetchedPosition = -1;
+		} else if (now > mLastScrollTime) {
+			final float velocity = Math.abs(scrolled) / (float) (now - mLastScrollTime);
+			mVelocity += VELOCITY_SMOOTHING * (velocity - mVelocity);
+		}
+
+		mLastScrollTime = now;
+
+		prefetch();
+	}
+
+	private void prefetch() {
+		final int first = mLayoutManager.findFirstVisibleItemPosition();
+		final int last = mLayoutManager.findLastVisibleItemPosition();
+		final View child = mLayoutManager.getChildAt(0);
+
+		if (first < 0 || last < 0 || child == null || child.getHeight() <= 0) {
+			return;
+		}
+
+		final int spanCount = mLayoutManager.getSpanCount();
+		final int rowsAhead = Math.min(mMaxRows,
+				mMinRows + (int) (mVelocity * LOOKAHEAD_TIME / child.getHeight()));
+
+		int start, end;
+		if (mDirection > 0) {
+			start = Math.max(last + 1, mPrefetchedPosition + 1);
+			end = Math.min(last + rowsAhead * spanCount, mAdapter.getItemCount() - 1);
+		} else {
+			start = mPrefetchedPosition >= 0 ? Math.min(first - 1, mPrefetchedPosition - 1) :
+					first - 1;
+			end = Math.max(first - rowsAhead * spanCount, 0);
+		}
+
+		// nearest positions first
+		for (int position = start; mDirection > 0 ? position <= end : position >= end;
+		     position += mDirection) {
+			final MediaItem item = mAdapter.getItem(position);
+
+			if (item != null && !DecodeExecutor.getInstance().prefetch(new Runnable() {
+				@Override
+				public void run() {
+					GalleryAdapter.preload(item, GalleryAdapter.NUM_COLORS);
+				}
+			})) {
+				// the queue is full, so continue from here on the next scroll
+				break;
+			}
+
+			mPrefetchedPosition = position;
+		}
+	}
+}
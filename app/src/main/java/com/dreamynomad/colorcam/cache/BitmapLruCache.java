@@ -4,9 +4,16 @@ import android.graphics.Bitmap;
 import android.os.Build;
 import android.util.LruCache;
 
+import java.util.IdentityHashMap;
+
 /**
  * Simple least-recently-used {@link android.graphics.Bitmap} cache, sized in bytes.
  * <p/>
+ * Each bitmap is reference counted: the cache holds one reference while it contains the bitmap,
+ * and whatever displays it holds another, through {@link #acquire} and {@link #release}. A
+ * bitmap is returned to the {@link BitmapPool} to be decoded into only once nothing holds it,
+ * so an evicted bitmap that is still on screen is never overwritten.
+ * <p/>
  * Created by Eric on 11/27/2014.
  */
 public class BitmapLruCache extends LruCache<String, Bitmap> {
@@ -15,6 +22,11 @@ public class BitmapLruCache extends LruCache<String, Bitmap> {
 
 	private static BitmapLruCache sInstance;
 
+	/**
+	 * Number of references to each bitmap that is cached or displayed.
+	 */
+	private final IdentityHashMap<Bitmap, Integer> mReferences = new IdentityHashMap<>();
+
 	/**
 	 * @param maxSize for caches that do not override {@link #sizeOf}, this is
 	 *                the maximum number of entries in the cache. For all other caches,
@@ -32,6 +44,63 @@ public class BitmapLruCache extends LruCache<String, Bitmap> {
 		return sInstance;
 	}
 
+	/**
+	 * Gets a cached bitmap and holds a reference to it until {@link #release} is called, so
+	 * that it is not reused even if it is evicted.
+	 *
+	 * @param key the key of the bitmap
+	 * @return the bitmap, or null if it is not cached
+	 */
+	public Bitmap acquire(String key) {
+		synchronized (mReferences) {
+			final Bitmap bitmap = get(key);
+
+			if (bitmap != null) {
+				acquire(bitmap);
+			}
+
+			return bitmap;
+		}
+	}
+
+	/**
+	 * Holds a reference to a bitmap until {@link #release} is called, such as a decoded bitmap
+	 * that is about to be displayed.
+	 *
+	 * @param bitmap the bitmap
+	 */
+	public void acquire(Bitmap bitmap) {
+		synchronized (mReferences) {
+			final Integer count = mReferences.get(bitmap);
+			mReferences.put(bitmap, count != null ? count + 1 : 1);
+		}
+	}
+
+	/**
+	 * Drops a reference to a bitmap, and returns it to the pool if it is neither cached nor
+	 * held anywhere else.
+	 *
+	 * @param bitmap the bitmap, which may be null
+	 */
+	public void release(Bitmap bitmap) {
+		if (bitmap == null) {
+			return;
+		}
+
+		synchronized (mReferences) {
+			final Integer count = mReferences.get(bitmap);
+
+			if (count != null && count > 1) {
+				mReferences.put(bitmap, count - 1);
+				return;
+			}
+
+			mReferences.remove(bitmap);
+		}
+
+		BitmapPool.getInstance().put(bitmap);
+	}
+
 	@Override
 	protected int sizeOf(String key, Bitmap value) {
 		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
@@ -40,4 +109,21 @@ public class BitmapLruCache extends LruCache<String, Bitmap> {
 			return value.getByteCount();
 		}
 	}
+
+	/**
+	 * Adds the reference held by the cache, which is dropped when the entry is removed.
+	 */
+	@Override
+	public Bitmap put(String key, Bitmap value) {
+		if (value != null) {
+			acquire(value);
+		}
+
+		return super.put(key, value);
+	}
+
+	@Override
+	protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+		release(oldValue);
+	}
 }
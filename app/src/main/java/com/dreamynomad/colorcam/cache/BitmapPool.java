@@ -0,0 +1,262 @@
+package com.dreamynomad.colorcam.cache;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of mutable {@link android.graphics.Bitmap}s that can be decoded into through
+ * {@link android.graphics.BitmapFactory.Options#inBitmap}, sized in bytes.
+ * <p/>
+ * Bitmaps are bucketed by allocation size on KitKat and above, where any bitmap that is large
+ * enough can be reused. Older versions can only reuse a bitmap with the exact same dimensions
+ * and config, so bitmaps are bucketed by those instead.
+ */
+public class BitmapPool {
+
+	private static final int DEFAULT_POOL_SIZE = (int) (Runtime.getRuntime().maxMemory() / 16);
+
+	/**
+	 * A pooled bitmap is not handed out if it is this many times larger than the request,
+	 * so that small decodes do not pin large allocations.
+	 */
+	private static final int MAX_SIZE_MULTIPLE = 4;
+
+	private static BitmapPool sInstance;
+
+	private final TreeMap<Long, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+
+	private final int mMaxSize;
+	private int mSize;
+
+	private int mHitCount;
+	private int mMissCount;
+	private int mPutCount;
+	private int mEvictionCount;
+
+	/**
+	 * @param maxSize the maximum sum of the allocation sizes of the pooled bitmaps, in bytes
+	 */
+	private BitmapPool(int maxSize) {
+		mMaxSize = maxSize;
+	}
+
+	public static synchronized BitmapPool getInstance() {
+		if (sInstance == null) {
+			sInstance = new BitmapPool(DEFAULT_POOL_SIZE);
+		}
+
+		return sInstance;
+	}
+
+	/**
+	 * Adds a bitmap to the pool. The bitmap must no longer be displayed anywhere, since its
+	 * pixels will be overwritten by the next decode that reuses it.
+	 *
+	 * @param bitmap the bitmap to reuse
+	 */
+	public synchronized void put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() ||
+				bitmap.getConfig() == null) {
+			return;
+		}
+
+		final int size = getAllocationByteCount(bitmap);
+
+		if (size > mMaxSize) {
+			return;
+		}
+
+		final Long key = getKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig(), size);
+		ArrayDeque<Bitmap> bucket = mBuckets.get(key);
+
+		if (bucket == null) {
+			bucket = new ArrayDeque<>();
+			mBuckets.put(key, bucket);
+		}
+
+		bucket.push(bitmap);
+		mSize += size;
+		mPutCount++;
+
+		trimToSize(mMaxSize);
+	}
+
+	/**
+	 * Removes a bitmap from the pool that can be decoded into.
+	 *
+	 * @param width  the width of the decoded bitmap
+	 * @param height the height of the decoded bitmap
+	 * @param config the config of the decoded bitmap
+	 * @return a reusable bitmap, or null if there is none
+	 */
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+		final int size = width * height * getBytesPerPixel(config);
+		final Long key = getKey(width, height, config, size);
+
+		Long bucketKey;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			bucketKey = mBuckets.ceilingKey(key);
+
+			if (bucketKey != null && bucketKey > (long) size * MAX_SIZE_MULTIPLE) {
+				bucketKey = null;
+			}
+		} else {
+			bucketKey = mBuckets.containsKey(key) ? key : null;
+		}
+
+		if (bucketKey == null) {
+			mMissCount++;
+			return null;
+		}
+
+		final ArrayDeque<Bitmap> bucket = mBuckets.get(bucketKey);
+		final Bitmap bitmap = bucket.pop();
+
+		if (bucket.isEmpty()) {
+			mBuckets.remove(bucketKey);
+		}
+
+		mSize -= getAllocationByteCount(bitmap);
+		mHitCount++;
+
+		return bitmap;
+	}
+
+	/**
+	 * Sets {@link android.graphics.BitmapFactory.Options#inBitmap} to a pooled bitmap that the
+	 * decode described by the options can reuse, if there is one. The options must already
+	 * contain the dimensions of the image and the sample size.
+	 *
+	 * @param options the options that will be used to decode
+	 */
+	public void addInBitmapOptions(BitmapFactory.Options options) {
+		final int sampleSize = Math.max(1, options.inSampleSize);
+
+		// before KitKat, only images that are not sampled can be decoded into an existing bitmap
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT && sampleSize != 1) {
+			return;
+		}
+
+		addInBitmapOptions(options,
+				(options.outWidth + sampleSize - 1) / sampleSize,
+				(options.outHeight + sampleSize - 1) / sampleSize);
+	}
+
+	/**
+	 * Sets {@link android.graphics.BitmapFactory.Options#inBitmap} to a pooled bitmap that can
+	 * hold a bitmap of the given size, if there is one. The decode is only made mutable when a
+	 * bitmap is attached.
+	 *
+	 * @param options the options that will be used to decode
+	 * @param width   the expected width of the decoded bitmap
+	 * @param height  the expected height of the decoded bitmap
+	 */
+	public void addInBitmapOptions(BitmapFactory.Options options, int width, int height) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB || width <= 0 || height <= 0) {
+			return;
+		}
+
+		final Bitmap.Config config = options.inPreferredConfig != null ?
+				options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+
+		options.inBitmap = get(width, height, config);
+
+		// inBitmap requires a mutable result, but other decodes keep what the caller asked for
+		if (options.inBitmap != null) {
+			options.inMutable = true;
+		}
+	}
+
+	public synchronized void evictAll() {
+		trimToSize(-1);
+	}
+
+	private void trimToSize(int maxSize) {
+		while (mSize > maxSize && !mBuckets.isEmpty()) {
+			// evict from the largest bucket first
+			final Map.Entry<Long, ArrayDeque<Bitmap>> entry = mBuckets.lastEntry();
+			final ArrayDeque<Bitmap> bucket = entry.getValue();
+			final Bitmap bitmap = bucket.removeLast();
+
+			if (bucket.isEmpty()) {
+				mBuckets.remove(entry.getKey());
+			}
+
+			mSize -= getAllocationByteCount(bitmap);
+			mEvictionCount++;
+		}
+	}
+
+	/**
+	 * @return the number of times {@link #get} returned a bitmap
+	 */
+	public synchronized int getHitCount() {
+		return mHitCount;
+	}
+
+	/**
+	 * @return the number of times {@link #get} did not find a bitmap
+	 */
+	public synchronized int getMissCount() {
+		return mMissCount;
+	}
+
+	public synchronized int getPutCount() {
+		return mPutCount;
+	}
+
+	public synchronized int getEvictionCount() {
+		return mEvictionCount;
+	}
+
+	/**
+	 * @return the sum of the allocation sizes of the pooled bitmaps, in bytes
+	 */
+	public synchronized int getSize() {
+		return mSize;
+	}
+
+	@Override
+	public synchronized String toString() {
+		final int accesses = mHitCount + mMissCount;
+		final int hitPercent = accesses != 0 ? (100 * mHitCount / accesses) : 0;
+		return String.format("BitmapPool[size=%d,maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
+				mSize, mMaxSize, mHitCount, mMissCount, hitPercent);
+	}
+
+	private static Long getKey(int width, int height, Bitmap.Config config, int size) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			// any bitmap with a large enough allocation can be reconfigured
+			return (long) size;
+		} else {
+			return ((long) width << 32) | ((long) height << 8) | config.ordinal();
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	static int getAllocationByteCount(Bitmap bitmap) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			return bitmap.getAllocationByteCount();
+		} else {
+			return bitmap.getByteCount();
+		}
+	}
+
+	private static int getBytesPerPixel(Bitmap.Config config) {
+		if (config == Bitmap.Config.ARGB_8888) {
+			return 4;
+		} else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+			return 2;
+		} else if (config == Bitmap.Config.ALPHA_8) {
+			return 1;
+		}
+
+		return 4;
+	}
+}
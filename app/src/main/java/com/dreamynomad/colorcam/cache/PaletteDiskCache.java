@@ -0,0 +1,682 @@
+package com.dreamynomad.colorcam.cache;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.dreamynomad.colorcam.App;
+import com.dreamynomad.colorcam.palette.PackedPalette;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Persistent palette cache, keyed by {@link android.provider.MediaStore} id and
+ * modification date, so that palettes survive process death.
+ * <p/>
+ * Palettes are stored as fixed-size records in a single file, which is memory-mapped when the
+ * cache is opened. New palettes are kept in memory and appended to the file in the background;
+ * a later record for the same id replaces an earlier one, and a tombstone record removes it.
+ * Once enough records have been appended, the file is mapped again and they are dropped from
+ * memory, so memory use does not grow with the number of palettes written.
+ * Once most records are dead, the file is compacted the next time it is opened.
+ */
+public class PaletteDiskCache {
+
+	private static final String TAG = PaletteDiskCache.class.getSimpleName();
+
+	private static final String FILE_NAME = "palettes.bin";
+
+	private static final int MAGIC = 0x50414C31; // "PAL1"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+
+	/**
+	 * Maximum number of colors in a record.
+	 */
+	public static final int MAX_COLORS = 6;
+
+	/**
+	 * id, date modified, number of colors, colors and populations.
+	 */
+	private static final int RECORD_SIZE = 8 + 8 + 4 + MAX_COLORS * 4 + MAX_COLORS * 4;
+
+	/**
+	 * Number of colors in a record that removes earlier records for its id.
+	 */
+	private static final int TOMBSTONE = -1;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * The file is compacted when it is opened if it has at least this many dead records, and
+	 * more dead records than live ones.
+	 */
+	private static final int COMPACT_MIN_DEAD = 256;
+
+	/**
+	 * Appended records are only dropped from memory in batches of at least this many, since
+	 * every time the file is mapped again, the previous mapping lingers until it is collected.
+	 */
+	private static final int REMAP_MIN_WRITTEN = 512;
+
+	private static PaletteDiskCache sInstance;
+
+	private final File mFile;
+
+	/**
+	 * Records in the mapped part of the file, which is followed by the written pending records.
+	 */
+	private ByteBuffer mMapped;
+	private int mMappedCount;
+
+	/**
+	 * Records that were added since the file was last mapped.
+	 */
+	private ByteBuffer mPending;
+	private int mPendingCount;
+
+	/**
+	 * Open-addressed index from id to record. Non-negative values are records in the mapped
+	 * file, negative values are ~index of pending records.
+	 */
+	private long[] mKeys;
+	private int[] mValues;
+	private boolean[] mUsed;
+	private int mSize;
+
+	/**
+	 * Number of pending records that have been appended to the file.
+	 */
+	private int mWrittenCount;
+	private boolean mFlushScheduled;
+
+	/**
+	 * Set when the file does not end where the written records were expected, such as after a
+	 * failed write, so that pending records are kept in memory rather than read from the file,
+	 * and nothing more is appended after what may be a partial record.
+	 */
+	private boolean mWriteFailed;
+
+	private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+
+	private final Runnable mFlush = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	private PaletteDiskCache(File file) {
+		mFile = file;
+		mPending = ByteBuffer.allocate(INITIAL_CAPACITY * RECORD_SIZE).order(ByteOrder.BIG_ENDIAN);
+		allocateIndex(INITIAL_CAPACITY * 2);
+		open();
+
+		// records that were replaced or removed are only dropped by rewriting the file
+		final int dead = mMappedCount - mSize;
+		if (dead >= COMPACT_MIN_DEAD && dead > mSize && compact()) {
+			mMapped = null;
+			mMappedCount = 0;
+			allocateIndex(INITIAL_CAPACITY * 2);
+			open();
+		}
+	}
+
+	/**
+	 * Opens the cache on first use, which maps the file and indexes it. Avoid calling this
+	 * for the first time on the main thread.
+	 */
+	public static synchronized PaletteDiskCache getInstance() {
+		if (sInstance == null) {
+			Context context = App.getContext();
+			sInstance = new PaletteDiskCache(new File(context.getFilesDir(), FILE_NAME));
+		}
+
+		return sInstance;
+	}
+
+	/**
+	 * Opens the cache on a background thread, so that it is ready before it is needed.
+	 */
+	public static void preload() {
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				getInstance();
+			}
+		}, TAG).start();
+	}
+
+	private void open() {
+		if (!mFile.exists()) {
+			return;
+		}
+
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(mFile, "rw");
+
+			if (file.length() < HEADER_SIZE || file.readInt() != MAGIC ||
+					file.readInt() != VERSION) {
+				Log.w(TAG, "Discarding palette cache with unknown format");
+				file.close();
+				file = null;
+				mFile.delete();
+				return;
+			}
+
+			long length = file.length() - HEADER_SIZE;
+			int count = (int) (length / RECORD_SIZE);
+
+			if (length % RECORD_SIZE != 0) {
+				// drop a record that was only partially written
+				file.setLength(HEADER_SIZE + (long) count * RECORD_SIZE);
+			}
+
+			FileChannel channel = file.getChannel();
+			mMapped = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+					(long) count * RECORD_SIZE);
+			mMappedCount = count;
+
+			for (int i = 0; i < count; i++) {
+				final long id = mMapped.getLong(i * RECORD_SIZE);
+				final int colors = mMapped.getInt(i * RECORD_SIZE + 16);
+
+				if (!isValidCount(colors)) {
+					// records after a misaligned write cannot be trusted
+					Log.w(TAG, "Discarding " + (count - i) + " corrupt palette records");
+					file.setLength(HEADER_SIZE + (long) i * RECORD_SIZE);
+					mMapped = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+							(long) i * RECORD_SIZE);
+					mMappedCount = i;
+					break;
+				}
+
+				if (colors == TOMBSTONE) {
+					final int slot = indexFind(id);
+
+					if (slot >= 0) {
+						indexRemove(slot);
+					}
+				} else {
+					indexPut(id, i);
+				}
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "Could not open palette cache", e);
+			mMapped = null;
+			mMappedCount = 0;
+		} finally {
+			if (file != null) {
+				try {
+					// the mapping stays valid after the file is closed
+					file.close();
+				} catch (IOException e) {
+					Log.e(TAG, "Could not close palette cache", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rewrites the file with only the records that are in the index, before anything new has
+	 * been added.
+	 *
+	 * @return whether the file was rewritten
+	 */
+	private boolean compact() {
+		final File temp = new File(mFile.getPath() + ".tmp");
+		final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + mSize * RECORD_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+
+		// keep the records in file order
+		for (int i = 0; i < mMappedCount; i++) {
+			final int slot = indexFind(mMapped.getLong(i * RECORD_SIZE));
+
+			if (slot >= 0 && mValues[slot] == i) {
+				for (int j = 0; j < RECORD_SIZE; j++) {
+					buffer.put(mMapped.get(i * RECORD_SIZE + j));
+				}
+			}
+		}
+
+		FileOutputStream outputStream = null;
+		try {
+			outputStream = new FileOutputStream(temp);
+			outputStream.write(buffer.array(), 0, buffer.position());
+			outputStream.getFD().sync();
+			outputStream.close();
+			outputStream = null;
+
+			if (!temp.renameTo(mFile)) {
+				Log.e(TAG, "Could not replace palette cache");
+				temp.delete();
+				return false;
+			}
+
+			return true;
+		} catch (IOException e) {
+			Log.e(TAG, "Could not compact palette cache", e);
+			temp.delete();
+			return false;
+		} finally {
+			if (outputStream != null) {
+				try {
+					outputStream.close();
+				} catch (IOException e) {
+					Log.e(TAG, "Could not close palette cache", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param id           the {@link android.provider.MediaStore} id of the image
+	 * @param dateModified the modification date of the image
+	 * @return the palette of the image, or null if it is not cached or out of date
+	 */
+	public synchronized PackedPalette get(long id, long dateModified) {
+		final int slot = indexFind(id);
+
+		if (slot < 0) {
+			return null;
+		}
+
+		final int value = mValues[slot];
+		final ByteBuffer buffer;
+		final int offset;
+
+		if (value >= 0) {
+			buffer = mMapped;
+			offset = value * RECORD_SIZE;
+		} else {
+			buffer = mPending;
+			offset = ~value * RECORD_SIZE;
+		}
+
+		if (buffer.getLong(offset + 8) != dateModified) {
+			return null;
+		}
+
+		final int count = buffer.getInt(offset + 16);
+
+		if (count < 0 || count > MAX_COLORS) {
+			Log.w(TAG, "Discarding corrupt palette record of " + id);
+			indexRemove(slot);
+			return null;
+		}
+
+		final int[] colors = new int[count];
+		final int[] populations = new int[count];
+
+		for (int i = 0; i < count; i++) {
+			colors[i] = buffer.getInt(offset + 20 + i * 4);
+			populations[i] = buffer.getInt(offset + 20 + MAX_COLORS * 4 + i * 4);
+		}
+
+		return new PackedPalette(colors, populations, count);
+	}
+
+	/**
+	 * Stores the palette of an image and appends it to the file in the background.
+	 *
+	 * @param id           the {@link android.provider.MediaStore} id of the image
+	 * @param dateModified the modification date of the image
+	 * @param palette      the palette of the image
+	 */
+	public synchronized void put(long id, long dateModified, PackedPalette palette) {
+		appendPending(id, dateModified, palette);
+		indexPut(id, ~(mPendingCount - 1));
+	}
+
+	/**
+	 * Removes the palette of an image, such as when it has been deleted.
+	 *
+	 * @param id the {@link android.provider.MediaStore} id of the image
+	 * @return whether a palette was removed
+	 */
+	public synchronized boolean remove(long id) {
+		final int slot = indexFind(id);
+
+		if (slot < 0) {
+			return false;
+		}
+
+		indexRemove(slot);
+		appendPending(id, 0, null);
+
+		return true;
+	}
+
+	/**
+	 * Adds a record to the pending records and schedules it to be appended to the file.
+	 *
+	 * @param palette the palette, or null for a tombstone that removes earlier records
+	 */
+	private void appendPending(long id, long dateModified, PackedPalette palette) {
+		if (mPending.remaining() < RECORD_SIZE) {
+			ByteBuffer pending = ByteBuffer.allocate(mPending.capacity() * 2);
+			mPending.flip();
+			pending.put(mPending);
+			mPending = pending;
+		}
+
+		final int count = palette != null ? Math.min(palette.size(), MAX_COLORS) : 0;
+
+		mPending.putLong(id);
+		mPending.putLong(dateModified);
+		mPending.putInt(palette != null ? count : TOMBSTONE);
+		for (int i = 0; i < MAX_COLORS; i++) {
+			mPending.putInt(i < count ? palette.getRgb(i) : 0);
+		}
+		for (int i = 0; i < MAX_COLORS; i++) {
+			mPending.putInt(i < count ? palette.getPopulation(i) : 0);
+		}
+
+		mPendingCount++;
+
+		// records added before the writer runs are appended together
+		if (!mFlushScheduled) {
+			mFlushScheduled = true;
+			mWriter.execute(mFlush);
+		}
+	}
+
+	/**
+	 * @return whether the number of colors of a record is a tombstone or fits in the record
+	 */
+	private static boolean isValidCount(int count) {
+		return count == TOMBSTONE || (count >= 0 && count <= MAX_COLORS);
+	}
+
+	/**
+	 * @param id           the {@link android.provider.MediaStore} id of the image
+	 * @param dateModified the modification date of the image
+	 * @return whether an up to date palette of the image is cached
+	 */
+	public synchronized boolean contains(long id, long dateModified) {
+		final int slot = indexFind(id);
+
+		if (slot < 0) {
+			return false;
+		}
+
+		final int value = mValues[slot];
+
+		if (value >= 0) {
+			return mMapped.getLong(value * RECORD_SIZE + 8) == dateModified;
+		} else {
+			return mPending.getLong(~value * RECORD_SIZE + 8) == dateModified;
+		}
+	}
+
+	/**
+	 * @return the number of images with a cached palette
+	 */
+	public synchronized int size() {
+		return mSize;
+	}
+
+	/**
+	 * @return the ids of the images with a cached palette, in no particular order
+	 */
+	public synchronized long[] getIds() {
+		final long[] ids = new long[mSize];
+		int count = 0;
+
+		for (int i = 0; i < mKeys.length; i++) {
+			if (mUsed[i]) {
+				ids[count++] = mKeys[i];
+			}
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Appends the pending records that are not in the file yet. Runs on the writer thread.
+	 */
+	private void flush() {
+		final byte[] records;
+		final long expectedStart;
+
+		synchronized (this) {
+			mFlushScheduled = false;
+
+			if (mWriteFailed) {
+				// the pending records stay in memory for the rest of the session
+				return;
+			}
+
+			records = Arrays.copyOfRange(mPending.array(), mWrittenCount * RECORD_SIZE,
+					mPendingCount * RECORD_SIZE);
+			expectedStart = mMappedCount + mWrittenCount;
+			mWrittenCount = mPendingCount;
+		}
+
+		if (records.length == 0) {
+			return;
+		}
+
+		final long start = append(records);
+
+		final int fileCount;
+		synchronized (this) {
+			if (start != expectedStart) {
+				mWriteFailed = true;
+			}
+
+			if (mWriteFailed || mWrittenCount < REMAP_MIN_WRITTEN) {
+				return;
+			}
+
+			fileCount = mMappedCount + mWrittenCount;
+		}
+
+		final ByteBuffer mapped = map(fileCount);
+
+		if (mapped != null) {
+			dropWritten(mapped, fileCount);
+		}
+	}
+
+	/**
+	 * Runs on the writer thread.
+	 *
+	 * @return the index in the file of the first appended record, or -1 if they could not be
+	 * written
+	 */
+	private long append(byte[] records) {
+		FileOutputStream outputStream = null;
+		try {
+			final long length = mFile.exists() ? mFile.length() : 0;
+			final boolean exists = length >= HEADER_SIZE;
+			final long start = exists ? (length - HEADER_SIZE) / RECORD_SIZE : 0;
+
+			outputStream = new FileOutputStream(mFile, true);
+
+			if (!exists) {
+				outputStream.getChannel().truncate(0);
+
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(MAGIC);
+				header.putInt(VERSION);
+				outputStream.write(header.array());
+			} else if (HEADER_SIZE + start * RECORD_SIZE != length) {
+				// append after the last whole record rather than after a partial one
+				outputStream.getChannel().truncate(HEADER_SIZE + start * RECORD_SIZE);
+			}
+
+			outputStream.write(records);
+			return start;
+		} catch (IOException e) {
+			Log.e(TAG, "Could not write palette cache", e);
+			return -1;
+		} finally {
+			if (outputStream != null) {
+				try {
+					outputStream.close();
+				} catch (IOException e) {
+					Log.e(TAG, "Could not close palette cache", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Maps the first records of the file. Runs on the writer thread.
+	 *
+	 * @return the mapped records, or null if the file could not be mapped
+	 */
+	private ByteBuffer map(int count) {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(mFile, "r");
+			return file.getChannel().map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+					(long) count * RECORD_SIZE);
+		} catch (IOException e) {
+			Log.e(TAG, "Could not map palette cache", e);
+			return null;
+		} finally {
+			if (file != null) {
+				try {
+					file.close();
+				} catch (IOException e) {
+					Log.e(TAG, "Could not close palette cache", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Points the index at the written records in the new mapping, and removes them from the
+	 * pending records. Runs on the writer thread.
+	 *
+	 * @param mapped    the first records of the file, including the written pending records
+	 * @param fileCount the number of mapped records
+	 */
+	private synchronized void dropWritten(ByteBuffer mapped, int fileCount) {
+		final int written = fileCount - mMappedCount;
+
+		for (int i = 0; i < mKeys.length; i++) {
+			if (mUsed[i] && mValues[i] < 0) {
+				final int pending = ~mValues[i];
+				mValues[i] = pending < written ? mMappedCount + pending : ~(pending - written);
+			}
+		}
+
+		final int remaining = mPendingCount - written;
+		final int capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(remaining) * 2);
+		final ByteBuffer pending;
+
+		if (capacity * RECORD_SIZE < mPending.capacity()) {
+			pending = ByteBuffer.allocate(capacity * RECORD_SIZE).order(ByteOrder.BIG_ENDIAN);
+		} else {
+			pending = mPending;
+		}
+
+		System.arraycopy(mPending.array(), written * RECORD_SIZE, pending.array(), 0,
+				remaining * RECORD_SIZE);
+		pending.clear();
+		pending.position(remaining * RECORD_SIZE);
+
+		mPending = pending;
+		mPendingCount = remaining;
+		mWrittenCount -= written;
+		mMapped = mapped;
+		mMappedCount = fileCount;
+	}
+
+	private void allocateIndex(int capacity) {
+		mKeys = new long[capacity];
+		mValues = new int[capacity];
+		mUsed = new boolean[capacity];
+		mSize = 0;
+	}
+
+	private int indexFind(long key) {
+		final int mask = mKeys.length - 1;
+		int slot = hash(key) & mask;
+
+		while (mUsed[slot]) {
+			if (mKeys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		return -1;
+	}
+
+	private void indexPut(long key, int value) {
+		if ((mSize + 1) * 2 > mKeys.length) {
+			final long[] keys = mKeys;
+			final int[] values = mValues;
+			final boolean[] used = mUsed;
+
+			allocateIndex(mKeys.length * 2);
+
+			for (int i = 0; i < keys.length; i++) {
+				if (used[i]) {
+					indexPut(keys[i], values[i]);
+				}
+			}
+		}
+
+		final int mask = mKeys.length - 1;
+		int slot = hash(key) & mask;
+
+		while (mUsed[slot]) {
+			if (mKeys[slot] == key) {
+				mValues[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		mUsed[slot] = true;
+		mKeys[slot] = key;
+		mValues[slot] = value;
+		mSize++;
+	}
+
+	/**
+	 * Removes a slot with linear probing, shifting later entries of the same run back so that
+	 * lookups do not stop early.
+	 */
+	private void indexRemove(int slot) {
+		final int mask = mKeys.length - 1;
+		int hole = slot;
+		int next = (hole + 1) & mask;
+
+		while (mUsed[next]) {
+			final int home = hash(mKeys[next]) & mask;
+
+			// move the entry if its home is not between the hole and its current position
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				mKeys[hole] = mKeys[next];
+				mValues[hole] = mValues[next];
+				hole = next;
+			}
+
+			next = (next + 1) & mask;
+		}
+
+		mUsed[hole] = false;
+		mSize--;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
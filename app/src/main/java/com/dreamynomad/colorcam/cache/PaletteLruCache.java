@@ -1,36 +1,278 @@
 package com.dreamynomad.colorcam.cache;
 
-import android.support.v7.graphics.Palette;
-import android.util.LruCache;
+import com.dreamynomad.colorcam.palette.PackedPalette;
 
-import java.util.List;
+import java.util.Arrays;
 
 /**
- * Simple palette cache that stores a limited number of palettes
- * (a list of {@link android.support.v7.graphics.Palette.Swatch})s.
+ * Least-recently-used cache of {@link com.dreamynomad.colorcam.palette.PackedPalette}s, keyed by
+ * {@link android.provider.MediaStore} id. Each entry keeps the modification date of its image,
+ * and a lookup with a different date misses, so an edited image gets a new palette.
+ * <p/>
+ * Keys are kept in primitive arrays so that no boxing or entry objects are needed; entries
+ * live in fixed slots, linked in access order, and are found through an open-addressed table.
  * <p/>
  * Created by Eric on 11/28/2014.
  */
-public class PaletteLruCache extends LruCache<String, List<Palette.Swatch>> {
+public class PaletteLruCache {
+
+	private static final int DEFAULT_CACHE_SIZE = 4096;
 
-	private static final int DEFAULT_CACHE_SIZE = 200;
+	private static final int NONE = -1;
 
 	private static PaletteLruCache sInstance;
 
+	private final int mMaxSize;
+
+	// entries
+	private final long[] mKeys;
+	private final long[] mDates;
+	private final PackedPalette[] mValues;
+	private final int[] mPrevious;
+	private final int[] mNext;
+	private int mHead = NONE; // most recently used
+	private int mTail = NONE; // least recently used
+	private int mSize;
+
+	// open-addressed table of entry slots, at most half full
+	private final int[] mTable;
+
 	/**
-	 * @param maxSize for caches that do not override {@link #sizeOf}, this is
-	 *                the maximum number of entries in the cache. For all other caches,
-	 *                this is the maximum sum of the sizes of the entries in this cache.
+	 * @param maxSize the maximum number of entries in the cache
 	 */
 	private PaletteLruCache(int maxSize) {
-		super(maxSize);
+		mMaxSize = maxSize;
+
+		mKeys = new long[maxSize];
+		mDates = new long[maxSize];
+		mValues = new PackedPalette[maxSize];
+		mPrevious = new int[maxSize];
+		mNext = new int[maxSize];
+
+		mTable = new int[Integer.highestOneBit(maxSize) * 4];
+		Arrays.fill(mTable, NONE);
 	}
 
-	public static PaletteLruCache getInstance() {
+	public static synchronized PaletteLruCache getInstance() {
 		if (sInstance == null) {
 			sInstance = new PaletteLruCache(DEFAULT_CACHE_SIZE);
 		}
 
 		return sInstance;
 	}
+
+	/**
+	 * @param id           the {@link android.provider.MediaStore} id of the image
+	 * @param dateModified the modification date of the image
+	 * @return the palette of the image, or null if it is not cached or out of date
+	 */
+	public synchronized PackedPalette get(long id, long dateModified) {
+		final int slot = find(id);
+
+		if (slot == NONE) {
+			return null;
+		}
+
+		final int entry = mTable[slot];
+
+		if (mDates[entry] != dateModified) {
+			return null;
+		}
+
+		moveToHead(entry);
+
+		return mValues[entry];
+	}
+
+	/**
+	 * Caches the palette of an image, evicting the least recently used entry if the cache is
+	 * full. Replaces the palette for an older modification date.
+	 */
+	public synchronized void put(long id, long dateModified, PackedPalette palette) {
+		if (palette == null) {
+			throw new NullPointerException("palette == null");
+		}
+
+		final int slot = find(id);
+
+		if (slot != NONE) {
+			final int entry = mTable[slot];
+			mDates[entry] = dateModified;
+			mValues[entry] = palette;
+			moveToHead(entry);
+			return;
+		}
+
+		final int entry;
+		if (mSize < mMaxSize) {
+			entry = mSize++;
+		} else {
+			// reuse the least recently used entry
+			entry = mTail;
+			removeFromTable(find(mKeys[entry]));
+			unlink(entry);
+		}
+
+		mKeys[entry] = id;
+		mDates[entry] = dateModified;
+		mValues[entry] = palette;
+		linkAtHead(entry);
+		insertIntoTable(id, entry);
+	}
+
+	/**
+	 * @return whether a palette was removed
+	 */
+	public synchronized boolean remove(long id) {
+		final int slot = find(id);
+
+		if (slot == NONE) {
+			return false;
+		}
+
+		final int entry = mTable[slot];
+		removeFromTable(slot);
+		unlink(entry);
+
+		// keep entries packed by moving the last one into the hole
+		final int last = mSize - 1;
+		if (entry != last) {
+			final int lastSlot = find(mKeys[last]);
+			final int previous = mPrevious[last];
+			final int next = mNext[last];
+
+			mKeys[entry] = mKeys[last];
+			mDates[entry] = mDates[last];
+			mValues[entry] = mValues[last];
+			mPrevious[entry] = previous;
+			mNext[entry] = next;
+
+			if (previous != NONE) {
+				mNext[previous] = entry;
+			} else {
+				mHead = entry;
+			}
+			if (next != NONE) {
+				mPrevious[next] = entry;
+			} else {
+				mTail = entry;
+			}
+
+			mTable[lastSlot] = entry;
+		}
+
+		mValues[last] = null;
+		mSize--;
+
+		return true;
+	}
+
+	public synchronized void evictAll() {
+		Arrays.fill(mTable, NONE);
+		Arrays.fill(mValues, null);
+		mHead = mTail = NONE;
+		mSize = 0;
+	}
+
+	public synchronized int size() {
+		return mSize;
+	}
+
+	public synchronized int maxSize() {
+		return mMaxSize;
+	}
+
+	private int find(long id) {
+		final int mask = mTable.length - 1;
+		int slot = hash(id) & mask;
+
+		while (mTable[slot] != NONE) {
+			if (mKeys[mTable[slot]] == id) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		return NONE;
+	}
+
+	private void insertIntoTable(long id, int entry) {
+		final int mask = mTable.length - 1;
+		int slot = hash(id) & mask;
+
+		while (mTable[slot] != NONE) {
+			slot = (slot + 1) & mask;
+		}
+
+		mTable[slot] = entry;
+	}
+
+	/**
+	 * Removes a slot with linear probing, shifting later entries of the same run back so that
+	 * lookups do not stop early.
+	 */
+	private void removeFromTable(int slot) {
+		final int mask = mTable.length - 1;
+		int hole = slot;
+		int next = (hole + 1) & mask;
+
+		while (mTable[next] != NONE) {
+			final int home = hash(mKeys[mTable[next]]) & mask;
+
+			// move the entry if its home is not between the hole and its current position
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				mTable[hole] = mTable[next];
+				hole = next;
+			}
+
+			next = (next + 1) & mask;
+		}
+
+		mTable[hole] = NONE;
+	}
+
+	private void moveToHead(int entry) {
+		if (entry != mHead) {
+			unlink(entry);
+			linkAtHead(entry);
+		}
+	}
+
+	private void linkAtHead(int entry) {
+		mPrevious[entry] = NONE;
+		mNext[entry] = mHead;
+
+		if (mHead != NONE) {
+			mPrevious[mHead] = entry;
+		}
+		mHead = entry;
+
+		if (mTail == NONE) {
+			mTail = entry;
+		}
+	}
+
+	private void unlink(int entry) {
+		final int previous = mPrevious[entry];
+		final int next = mNext[entry];
+
+		if (previous != NONE) {
+			mNext[previous] = next;
+		} else {
+			mHead = next;
+		}
+
+		if (next != NONE) {
+			mPrevious[next] = previous;
+		} else {
+			mTail = previous;
+		}
+
+		mPrevious[entry] = mNext[entry] = NONE;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
 }
@@ -0,0 +1,201 @@
+package com.dreamynomad.colorcam.decode;
+
+/**
+ * Reads the dimensions of JPEG, PNG and WebP images from the start of their data, so that a
+ * sample size can be chosen without asking the decoder to parse the image twice.
+ * <p/>
+ * Parsing only looks at the bytes it is given, and reports that the size is unknown if they end
+ * before it is found, so callers can read more of the image and try again.
+ */
+public final class ImageHeaderParser {
+
+	private static final int JPEG_MARKER = 0xFF;
+	private static final int JPEG_SOI = 0xD8;
+	private static final int JPEG_EOI = 0xD9;
+	private static final int JPEG_SOS = 0xDA;
+	private static final int JPEG_TEM = 0x01;
+	private static final int JPEG_RST0 = 0xD0;
+	private static final int JPEG_RST7 = 0xD7;
+
+	private static final int[] PNG_SIGNATURE = {0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+
+	private ImageHeaderParser() {
+	}
+
+	/**
+	 * @param data   the start of the image
+	 * @param length number of bytes of the image in the buffer
+	 * @param size   receives the width and height
+	 * @return whether the size was found
+	 */
+	public static boolean getSize(byte[] data, int length, int[] size) {
+		if (length < 2) {
+			return false;
+		}
+
+		if (u8(data, 0) == JPEG_MARKER && u8(data, 1) == JPEG_SOI) {
+			return getJpegSize(data, length, size);
+		} else if (u8(data, 0) == PNG_SIGNATURE[0]) {
+			return getPngSize(data, length, size);
+		} else if (matches(data, length, 0, "RIFF") && matches(data, length, 8, "WEBP")) {
+			return getWebpSize(data, length, size);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Walks the segments up to the first start of frame, which holds the dimensions.
+	 */
+	private static boolean getJpegSize(byte[] data, int length, int[] size) {
+		int offset = 2;
+
+		while (offset + 2 <= length) {
+			if (u8(data, offset) != JPEG_MARKER) {
+				return false;
+			}
+
+			final int marker = u8(data, offset + 1);
+
+			if (marker == JPEG_MARKER) {
+				// fill byte
+				offset++;
+				continue;
+			}
+
+			offset += 2;
+
+			if (marker == JPEG_SOI || marker == JPEG_TEM ||
+					(marker >= JPEG_RST0 && marker <= JPEG_RST7)) {
+				// markers without a segment
+				continue;
+			}
+
+			if (marker == JPEG_SOS || marker == JPEG_EOI || offset + 2 > length) {
+				return false;
+			}
+
+			if (isStartOfFrame(marker)) {
+				// length, precision, height, width
+				if (offset + 7 > length) {
+					return false;
+				}
+
+				return setSize(size, u16(data, offset + 5), u16(data, offset + 3));
+			}
+
+			final int segmentLength = u16(data, offset);
+
+			if (segmentLength < 2) {
+				return false;
+			}
+
+			offset += segmentLength;
+		}
+
+		return false;
+	}
+
+	private static boolean isStartOfFrame(int marker) {
+		// C4, C8 and CC are Huffman tables, a reserved marker and arithmetic coding conditions
+		return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 &&
+				marker != 0xCC;
+	}
+
+	/**
+	 * The IHDR chunk always comes first, straight after the signature.
+	 */
+	private static boolean getPngSize(byte[] data, int length, int[] size) {
+		if (length < 24) {
+			return false;
+		}
+
+		for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+			if (u8(data, i) != PNG_SIGNATURE[i]) {
+				return false;
+			}
+		}
+
+		if (!matches(data, length, 12, "IHDR")) {
+			return false;
+		}
+
+		return setSize(size, s32(data, 16), s32(data, 20));
+	}
+
+	/**
+	 * The first chunk is either a lossy or lossless bitstream, or the extended header.
+	 */
+	private static boolean getWebpSize(byte[] data, int length, int[] size) {
+		if (matches(data, length, 12, "VP8 ")) {
+			// frame tag, start code, then 14-bit dimensions with a 2-bit scale
+			if (length < 30 || u8(data, 23) != 0x9D || u8(data, 24) != 0x01 ||
+					u8(data, 25) != 0x2A) {
+				return false;
+			}
+
+			return setSize(size, u16le(data, 26) & 0x3FFF, u16le(data, 28) & 0x3FFF);
+		} else if (matches(data, length, 12, "VP8L")) {
+			// signature, then 14 bits each of width - 1 and height - 1
+			if (length < 25 || u8(data, 20) != 0x2F) {
+				return false;
+			}
+
+			final int bits = u16le(data, 21) | (u16le(data, 23) << 16);
+			return setSize(size, (bits & 0x3FFF) + 1, ((bits >> 14) & 0x3FFF) + 1);
+		} else if (matches(data, length, 12, "VP8X")) {
+			// flags, reserved, then 24 bits each of canvas width - 1 and height - 1
+			if (length < 30) {
+				return false;
+			}
+
+			return setSize(size, u24le(data, 24) + 1, u24le(data, 27) + 1);
+		}
+
+		return false;
+	}
+
+	private static boolean setSize(int[] size, int width, int height) {
+		if (width <= 0 || height <= 0) {
+			return false;
+		}
+
+		size[0] = width;
+		size[1] = height;
+		return true;
+	}
+
+	private static boolean matches(byte[] data, int length, int offset, String tag) {
+		if (offset + tag.length() > length) {
+			return false;
+		}
+
+		for (int i = 0; i < tag.length(); i++) {
+			if (u8(data, offset + i) != tag.charAt(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static int u8(byte[] data, int offset) {
+		return data[offset] & 0xFF;
+	}
+
+	private static int u16(byte[] data, int offset) {
+		return (u8(data, offset) << 8) | u8(data, offset + 1);
+	}
+
+	private static int s32(byte[] data, int offset) {
+		return (u16(data, offset) << 16) | u16(data, offset + 2);
+	}
+
+	private static int u16le(byte[] data, int offset) {
+		return u8(data, offset) | (u8(data, offset + 1) << 8);
+	}
+
+	private static int u24le(byte[] data, int offset) {
+		return u16le(data, offset) | (u8(data, offset + 2) << 16);
+	}
+}
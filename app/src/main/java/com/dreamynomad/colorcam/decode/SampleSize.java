@@ -0,0 +1,41 @@
+package com.dreamynomad.colorcam.decode;
+
+/**
+ * Chooses the power of two that an image is sampled by when it is decoded.
+ */
+public final class SampleSize {
+
+	private SampleSize() {
+	}
+
+	/**
+	 * @param width     the raw width of the image
+	 * @param height    the raw height of the image
+	 * @param reqWidth  the desired width
+	 * @param reqHeight the desired height
+	 * @param maxSize   the largest width or height that can be rendered
+	 * @return the largest sample size that keeps the image larger than the desired width and
+	 * height, or more if it would not fit in the maximum size
+	 */
+	public static int calculate(int width, int height, int reqWidth, int reqHeight, int maxSize) {
+		int inSampleSize = 1;
+
+		if (height > reqHeight || width > reqWidth) {
+
+			final int halfHeight = height / 2;
+			final int halfWidth = width / 2;
+
+			// Calculate the largest inSampleSize value that is a power of 2 and keeps both
+			// height and width larger than the requested height and width.
+			// Make sure bitmap can be rendered by ImageView by checking dimensions
+			while (((halfHeight / inSampleSize) > reqHeight
+					&& (halfWidth / inSampleSize) > reqWidth)
+					|| (height / inSampleSize) > maxSize
+					|| (width / inSampleSize) > maxSize) {
+				inSampleSize *= 2;
+			}
+		}
+
+		return inSampleSize;
+	}
+}
@@ -0,0 +1,288 @@
+package com.dreamynomad.colorcam.executor;
+
+import android.os.Process;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs thumbnail decodes for adapter positions, newest first.
+ * <p/>
+ * During a fling, positions are bound faster than they can be decoded, and only the most
+ * recently bound ones are still on screen. Work is therefore taken from the queue in LIFO order,
+ * the queue is bounded by dropping the oldest work, and queued work for positions outside of the
+ * visible range is dropped as soon as the range is known.
+ * <p/>
+ * Dropped work that was submitted by an {@link android.os.AsyncTask} completes with a null
+ * result instead of running.
+ */
+public class DecodeExecutor {
+
+	private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+	private static final int POOL_SIZE = Math.max(2, Math.min(CPU_COUNT - 1, 4));
+	private static final int KEEP_ALIVE = 1; // in seconds
+
+	/**
+	 * Maximum number of decodes waiting to run.
+	 */
+	private static final int MAX_QUEUE_DEPTH = 48;
+
+	/**
+	 * Maximum number of prefetches waiting to run.
+	 */
+	private static final int MAX_PREFETCH_DEPTH = 24;
+
+	private static DecodeExecutor sInstance;
+
+	private final LinkedBlockingDeque<Runnable> mQueue;
+	private final ThreadPoolExecutor mExecutor;
+
+	private final LinkedBlockingDeque<Runnable> mPrefetchQueue;
+	private final ThreadPoolExecutor mPrefetchExecutor;
+
+	/**
+	 * Number of decodes that are queued or running. The lock is notified when it drops to 0,
+	 * and when prefetches are cancelled.
+	 */
+	private final AtomicInteger mActiveCount = new AtomicInteger();
+	private final Object mIdleLock = new Object();
+
+	/**
+	 * Positions outside of this range are no longer worth decoding.
+	 */
+	private int mFirstPosition = 0;
+	private int mLastPosition = Integer.MAX_VALUE;
+
+	/**
+	 * Incremented when prefetches are cancelled, so that a prefetch that is already waiting
+	 * for the decodes to finish gives up.
+	 */
+	private volatile int mPrefetchGeneration;
+
+	private DecodeExecutor() {
+		mQueue = new LifoBlockingDeque(MAX_QUEUE_DEPTH);
+		mExecutor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS,
+				mQueue, new PriorityThreadFactory("DecodeExecutor",
+				Process.THREAD_PRIORITY_BACKGROUND), new DiscardOldestPolicy());
+		mExecutor.allowCoreThreadTimeOut(true);
+
+		// a single, lower priority thread, which drops new work when full
+		mPrefetchQueue = new LinkedBlockingDeque<>(MAX_PREFETCH_DEPTH);
+		mPrefetchExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE, TimeUnit.SECONDS,
+				mPrefetchQueue, new PriorityThreadFactory("Prefetch",
+				Process.THREAD_PRIORITY_LOWEST), new ThreadPoolExecutor.DiscardPolicy());
+		mPrefetchExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	public static synchronized DecodeExecutor getInstance() {
+		if (sInstance == null) {
+			sInstance = new DecodeExecutor();
+		}
+
+		return sInstance;
+	}
+
+	/**
+	 * @param position the adapter position that the work is for
+	 * @return an executor that runs work for the position
+	 */
+	public Executor forPosition(final int position) {
+		return new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				// counted before it is queued, so that a prefetch never sees it missing
+				mActiveCount.incrementAndGet();
+				mExecutor.execute(new DecodeTask(position, command));
+			}
+		};
+	}
+
+	/**
+	 * Runs work that is only useful ahead of time, in the order it was submitted. Prefetches
+	 * run on their own thread and wait while decodes for bound positions are queued or running,
+	 * so that they never delay visible work. Must be called from a single thread.
+	 *
+	 * @param command the work to run
+	 * @return whether the work was queued, which it is not if too many prefetches are waiting
+	 */
+	public boolean prefetch(final Runnable command) {
+		if (mPrefetchQueue.remainingCapacity() == 0) {
+			return false;
+		}
+
+		final int generation = mPrefetchGeneration;
+
+		mPrefetchExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (mIdleLock) {
+					while (mActiveCount.get() > 0 && generation == mPrefetchGeneration) {
+						try {
+							mIdleLock.wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}
+
+				if (generation == mPrefetchGeneration) {
+					command.run();
+				}
+			}
+		});
+
+		return true;
+	}
+
+	/**
+	 * Drops all prefetches that have not run yet.
+	 */
+	public void cancelPrefetches() {
+		mPrefetchGeneration++;
+		mPrefetchQueue.clear();
+
+		// wakes a prefetch that is waiting for the decodes, so that it gives up
+		synchronized (mIdleLock) {
+			mIdleLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Drops queued work for positions that are outside of the range, and any work submitted
+	 * later for those positions will be dropped before it runs.
+	 *
+	 * @param firstPosition the first position worth decoding, inclusive
+	 * @param lastPosition  the last position worth decoding, inclusive
+	 */
+	public synchronized void setVisibleRange(int firstPosition, int lastPosition) {
+		mFirstPosition = firstPosition;
+		mLastPosition = lastPosition;
+
+		final Iterator<Runnable> iterator = mQueue.iterator();
+
+		while (iterator.hasNext()) {
+			final DecodeTask task = (DecodeTask) iterator.next();
+
+			// unless a thread has just taken it, which then drops it instead
+			if (!isInRange(task.position) && mQueue.remove(task)) {
+				task.discard();
+			}
+		}
+	}
+
+	/**
+	 * Allows work for any position, such as when a new gallery is shown.
+	 */
+	public synchronized void resetVisibleRange() {
+		mFirstPosition = 0;
+		mLastPosition = Integer.MAX_VALUE;
+	}
+
+	private synchronized boolean isInRange(int position) {
+		return position >= mFirstPosition && position <= mLastPosition;
+	}
+
+	/**
+	 * @return the number of decodes waiting to run
+	 */
+	public int getQueueDepth() {
+		return mQueue.size();
+	}
+
+	private class DecodeTask implements Runnable {
+
+		private final int position;
+		private final Runnable command;
+
+		private DecodeTask(int position, Runnable command) {
+			this.position = position;
+			this.command = command;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (isInRange(position)) {
+					command.run();
+				} else {
+					cancel();
+				}
+			} finally {
+				finish();
+			}
+		}
+
+		/**
+		 * Drops the work instead of running it.
+		 */
+		private void discard() {
+			try {
+				cancel();
+			} finally {
+				finish();
+			}
+		}
+
+		private void cancel() {
+			if (command instanceof Future) {
+				// an AsyncTask's future, which will then deliver a null result
+				((Future) command).cancel(false);
+			}
+		}
+
+		private void finish() {
+			if (mActiveCount.decrementAndGet() == 0) {
+				synchronized (mIdleLock) {
+					mIdleLock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deque that hands out the most recently added work first.
+	 */
+	private static class LifoBlockingDeque extends LinkedBlockingDeque<Runnable> {
+
+		private LifoBlockingDeque(int capacity) {
+			super(capacity);
+		}
+
+		@Override
+		public boolean offer(Runnable runnable) {
+			return offerFirst(runnable);
+		}
+	}
+
+	/**
+	 * Makes room for new work by dropping the oldest queued work.
+	 */
+	private static class DiscardOldestPolicy implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				((DecodeTask) runnable).discard();
+				return;
+			}
+
+			final LinkedBlockingDeque<Runnable> queue =
+					(LinkedBlockingDeque<Runnable>) executor.getQueue();
+			final Runnable oldest = queue.pollLast();
+
+			if (oldest != null) {
+				((DecodeTask) oldest).discard();
+			}
+
+			if (!queue.offerFirst(runnable)) {
+				((DecodeTask) runnable).discard();
+			}
+		}
+	}
+}
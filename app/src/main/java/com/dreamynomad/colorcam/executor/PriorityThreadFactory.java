@@ -0,0 +1,37 @@
+package com.dreamynomad.colorcam.executor;
+
+import android.os.Process;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates numbered threads that run at a {@link android.os.Process} thread priority.
+ */
+public class PriorityThreadFactory implements ThreadFactory {
+
+	private final AtomicInteger mCount = new AtomicInteger(1);
+
+	private final String mName;
+	private final int mPriority;
+
+	/**
+	 * @param name     the prefix of the thread names
+	 * @param priority a priority such as {@link android.os.Process#THREAD_PRIORITY_BACKGROUND}
+	 */
+	public PriorityThreadFactory(String name, int priority) {
+		mName = name;
+		mPriority = priority;
+	}
+
+	@Override
+	public Thread newThread(final Runnable runnable) {
+		return new Thread(new Runnable() {
+			@Override
+			public void run() {
+				Process.setThreadPriority(mPriority);
+				runnable.run();
+			}
+		}, mName + " #" + mCount.getAndIncrement());
+	}
+}
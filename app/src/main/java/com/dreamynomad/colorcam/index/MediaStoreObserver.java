@@ -0,0 +1,52 @@
+package com.dreamynomad.colorcam.index;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+
+/**
+ * Starts a {@link PaletteIndexService} update when images are added, modified or deleted.
+ * <p/>
+ * The {@link android.provider.MediaStore} sends a change for every row while the media scanner
+ * runs, so changes are only acted on once they have stopped for a while.
+ */
+public class MediaStoreObserver extends ContentObserver {
+
+	private static final long UPDATE_DELAY_MS = 2000;
+
+	private final Context mContext;
+	private final Handler mHandler;
+
+	private final Runnable mUpdate = new Runnable() {
+		@Override
+		public void run() {
+			PaletteIndexService.update(mContext);
+		}
+	};
+
+	private MediaStoreObserver(Context context, Handler handler) {
+		super(handler);
+
+		mContext = context.getApplicationContext();
+		mHandler = handler;
+	}
+
+	/**
+	 * Observes images in external storage for as long as the process lives.
+	 */
+	public static void register(Context context) {
+		final MediaStoreObserver observer =
+				new MediaStoreObserver(context, new Handler(Looper.getMainLooper()));
+
+		context.getContentResolver().registerContentObserver(
+				MediaStore.Images.Media.EXTERNAL_CONTENT_URI, true, observer);
+	}
+
+	@Override
+	public void onChange(boolean selfChange) {
+		mHandler.removeCallbacks(mUpdate);
+		mHandler.postDelayed(mUpdate, UPDATE_DELAY_MS);
+	}
+}
@@ -0,0 +1,387 @@
+package com.dreamynomad.colorcam.index;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.BatteryManager;
+import android.os.Process;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import com.dreamynomad.colorcam.PaletteLoader;
+import com.dreamynomad.colorcam.cache.PaletteDiskCache;
+import com.dreamynomad.colorcam.cache.PaletteLruCache;
+import com.dreamynomad.colorcam.executor.PriorityThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Generates the palettes of every image in the {@link android.provider.MediaStore} ahead of
+ * time and stores them in the {@link com.dreamynomad.colorcam.cache.PaletteDiskCache}, so that
+ * the gallery never waits for quantization.
+ * <p/>
+ * A full index walks every image, newest first, in batches that run on every core. It only runs
+ * while the device is charging, and stops after the current batch when it is unplugged; it
+ * resumes from the images that are still missing the next time.
+ * <p/>
+ * Once a full index has finished, changes to the {@link android.provider.MediaStore} are
+ * handled by an update, which only queries images that were added or modified since the last
+ * index. New images always have a larger id than any before them, so images have been deleted
+ * exactly when there are fewer images than the last count plus the new ones, and only then are
+ * the palettes compared with every id.
+ */
+public class PaletteIndexService extends IntentService {
+
+	private static final String TAG = PaletteIndexService.class.getSimpleName();
+
+	private static final boolean DEBUG = false;
+
+	private static final String ACTION_INDEX = "com.dreamynomad.colorcam.index.action.INDEX";
+	private static final String ACTION_UPDATE = "com.dreamynomad.colorcam.index.action.UPDATE";
+
+	private static final String PREFERENCES_NAME = "palette_index";
+	private static final String PREF_MAX_ID = "max_id";
+	private static final String PREF_MAX_DATE_MODIFIED = "max_date_modified";
+	private static final String PREF_COUNT = "count";
+
+	private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Number of images indexed between checks of whether indexing should continue.
+	 */
+	private static final int BATCH_SIZE = 64;
+
+	private static final String[] PROJECTION =
+			{MediaStore.Images.Media._ID, MediaStore.Images.Media.DATE_MODIFIED};
+
+	private static final String[] ID_PROJECTION = {MediaStore.Images.Media._ID};
+
+	private ExecutorService mExecutor;
+
+	/**
+	 * Largest id and modification date seen by the current index.
+	 */
+	private long mMaxId;
+	private long mMaxDateModified;
+
+	/**
+	 * Number of images counted by the last index or update, or -1 if it is not known.
+	 */
+	private int mCount;
+
+	public PaletteIndexService() {
+		super(TAG);
+	}
+
+	/**
+	 * Starts a full index if the device is charging.
+	 */
+	public static void startIfCharging(Context context) {
+		if (isCharging(context)) {
+			context.startService(new Intent(context, PaletteIndexService.class)
+					.setAction(ACTION_INDEX));
+		}
+	}
+
+	/**
+	 * Indexes the images that changed since the last index.
+	 */
+	public static void update(Context context) {
+		context.startService(new Intent(context, PaletteIndexService.class)
+				.setAction(ACTION_UPDATE));
+	}
+
+	/**
+	 * @return whether the device is plugged in
+	 */
+	private static boolean isCharging(Context context) {
+		// sticky, so no receiver is registered
+		final Intent battery = context.getApplicationContext().registerReceiver(null,
+				new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+
+		return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+	}
+
+	@Override
+	protected void onHandleIntent(Intent intent) {
+		final long start = System.currentTimeMillis();
+		final SharedPreferences preferences =
+				getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+		mExecutor = Executors.newFixedThreadPool(CPU_COUNT,
+				new PriorityThreadFactory(TAG, Process.THREAD_PRIORITY_LOWEST));
+
+		try {
+			if (ACTION_UPDATE.equals(intent.getAction())) {
+				if (!preferences.contains(PREF_MAX_ID)) {
+					// nothing to update until a full index has finished
+					return;
+				}
+
+				mMaxId = preferences.getLong(PREF_MAX_ID, 0);
+				mMaxDateModified = preferences.getLong(PREF_MAX_DATE_MODIFIED, 0);
+				mCount = preferences.getInt(PREF_COUNT, -1);
+
+				if (!update()) {
+					return;
+				}
+			} else {
+				mMaxId = 0;
+				mMaxDateModified = 0;
+
+				if (!isCharging(this) || !index()) {
+					return;
+				}
+			}
+
+			preferences.edit()
+					.putLong(PREF_MAX_ID, mMaxId)
+					.putLong(PREF_MAX_DATE_MODIFIED, mMaxDateModified)
+					.putInt(PREF_COUNT, mCount)
+					.apply();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			mExecutor.shutdownNow();
+			mExecutor = null;
+
+			if (DEBUG) {
+				Log.d(TAG, intent.getAction() + " took " +
+						(System.currentTimeMillis() - start) + " ms");
+			}
+		}
+	}
+
+	/**
+	 * Indexes every image, and removes the palettes of images that no longer exist.
+	 *
+	 * @return whether every image was indexed
+	 */
+	private boolean index() throws InterruptedException {
+		// newest first, since those are the ones most likely to be viewed
+		final Cursor cursor = getContentResolver().query(
+				MediaStore.Images.Media.EXTERNAL_CONTENT_URI, PROJECTION,
+				null, null, MediaStore.Images.Media.DATE_TAKEN + " DESC");
+
+		if (cursor == null) {
+			return false;
+		}
+
+		final long[] ids;
+
+		try {
+			ids = indexRows(cursor, true);
+		} finally {
+			cursor.close();
+		}
+
+		if (ids == null) {
+			return false;
+		}
+
+		mCount = ids.length;
+		removeDeleted(ids);
+		return true;
+	}
+
+	/**
+	 * Indexes images that were added or modified since the last index, and removes the palettes
+	 * of images that have been deleted.
+	 *
+	 * @return whether the update finished
+	 */
+	private boolean update() throws InterruptedException {
+		// counted first, so that an image added before the query of changed images is counted
+		// as new there, and only causes an extra check
+		final int count = countImages();
+
+		if (count < 0) {
+			return false;
+		}
+
+		final long previousMaxId = mMaxId;
+		final Cursor changed = queryImages(MediaStore.Images.Media._ID + " > ? OR " +
+						MediaStore.Images.Media.DATE_MODIFIED + " > ?",
+				new String[]{Long.toString(mMaxId), Long.toString(mMaxDateModified)});
+
+		if (changed == null) {
+			return false;
+		}
+
+		final long[] changedIds;
+
+		try {
+			changedIds = indexRows(changed, false);
+		} finally {
+			changed.close();
+		}
+
+		if (changedIds == null) {
+			return false;
+		}
+
+		int added = 0;
+		for (long id : changedIds) {
+			if (id > previousMaxId) {
+				added++;
+			}
+		}
+
+		// ids are never reused, so any other change in the count is a deletion
+		if (mCount < 0 || count < mCount + added) {
+			final long[] ids = queryIds();
+
+			if (ids == null) {
+				return false;
+			}
+
+			removeDeleted(ids);
+		}
+
+		mCount = count;
+		return true;
+	}
+
+	/**
+	 * Indexes the images of a cursor in batches.
+	 *
+	 * @param stopWhenUnplugged whether to stop between batches if the device is not charging
+	 * @return the ids of all rows, or null if indexing stopped early
+	 */
+	private long[] indexRows(Cursor cursor, boolean stopWhenUnplugged)
+			throws InterruptedException {
+		final int idIdx = cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
+		final int dateIdx = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_MODIFIED);
+
+		final PaletteDiskCache diskCache = PaletteDiskCache.getInstance();
+		final List<IndexTask> batch = new ArrayList<>(BATCH_SIZE);
+		final long[] ids = new long[cursor.getCount()];
+
+		for (int i = 0; cursor.moveToNext(); i++) {
+			final long id = cursor.getLong(idIdx);
+			final long dateModified = cursor.getLong(dateIdx);
+
+			ids[i] = id;
+			mMaxId = Math.max(mMaxId, id);
+			mMaxDateModified = Math.max(mMaxDateModified, dateModified);
+
+			if (diskCache.contains(id, dateModified)) {
+				continue;
+			}
+
+			batch.add(new IndexTask(id, dateModified));
+
+			if (batch.size() == BATCH_SIZE) {
+				mExecutor.invokeAll(batch);
+				batch.clear();
+
+				if (stopWhenUnplugged && !isCharging(this)) {
+					return null;
+				}
+			}
+		}
+
+		if (!batch.isEmpty()) {
+			mExecutor.invokeAll(batch);
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Removes the palettes of images that are not in the list of ids.
+	 */
+	private static void removeDeleted(long[] ids) {
+		final PaletteDiskCache diskCache = PaletteDiskCache.getInstance();
+		final PaletteLruCache memoryCache = PaletteLruCache.getInstance();
+		final long[] cached = diskCache.getIds();
+
+		Arrays.sort(ids);
+
+		for (long id : cached) {
+			if (Arrays.binarySearch(ids, id) < 0) {
+				diskCache.remove(id);
+				memoryCache.remove(id);
+
+				if (DEBUG) {
+					Log.d(TAG, "Removed palette of deleted image " + id);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of images, or -1 if they could not be queried
+	 */
+	private int countImages() {
+		final Cursor cursor = getContentResolver().query(
+				MediaStore.Images.Media.EXTERNAL_CONTENT_URI, ID_PROJECTION, null, null, null);
+
+		if (cursor == null) {
+			return -1;
+		}
+
+		try {
+			return cursor.getCount();
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * @return the ids of every image, or null if they could not be queried
+	 */
+	private long[] queryIds() {
+		final Cursor cursor = getContentResolver().query(
+				MediaStore.Images.Media.EXTERNAL_CONTENT_URI, ID_PROJECTION, null, null, null);
+
+		if (cursor == null) {
+			return null;
+		}
+
+		try {
+			final int idIdx = cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
+			final long[] ids = new long[cursor.getCount()];
+
+			for (int i = 0; cursor.moveToNext(); i++) {
+				ids[i] = cursor.getLong(idIdx);
+			}
+
+			return ids;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * @return the ids and modification dates of the images that match the selection
+	 */
+	private Cursor queryImages(String selection, String[] selectionArgs) {
+		return getContentResolver().query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+				PROJECTION, selection, selectionArgs, null);
+	}
+
+	private static class IndexTask implements Callable<Boolean> {
+
+		private final long mId;
+		private final long mDateModified;
+
+		private IndexTask(long id, long dateModified) {
+			mId = id;
+			mDateModified = dateModified;
+		}
+
+		@Override
+		public Boolean call() {
+			return PaletteLoader.index(mId, mDateModified, PaletteDiskCache.MAX_COLORS);
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package com.dreamynomad.colorcam.index;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Starts indexing palettes when the device is plugged in.
+ */
+public class PowerConnectedReceiver extends BroadcastReceiver {
+
+	@Override
+	public void onReceive(Context context, Intent intent) {
+		if (Intent.ACTION_POWER_CONNECTED.equals(intent.getAction())) {
+			PaletteIndexService.startIfCharging(context);
+		}
+	}
+}
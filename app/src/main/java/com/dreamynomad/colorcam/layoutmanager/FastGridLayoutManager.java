@@ -41,6 +41,17 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 	SpanSizeLookup mSpanSizeLookup = new DefaultSpanSizeLookup();
 	// re-used variable to acquire decor insets from RecyclerView
 	final Rect mDecorInsets = new Rect();
+	/**
+	 * Whether every item has the same size for a given number of spans
+	 */
+	boolean mFixedItemSize;
+	/**
+	 * Size in the other direction, and measure specs, of the last fixed-size item measured
+	 */
+	int mFixedOtherSize = -1;
+	int mFixedOrientation;
+	int mFixedWidthSpec;
+	int mFixedHeightSpec;
 
 	/**
 	 * Creates a vertical GridLayoutManager
@@ -146,6 +157,8 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 	public void onLayoutChildren(RecyclerView.Recycler recycler, RecyclerView.State state) {
 		if (state.isPreLayout()) {
 			cachePreLayoutSpanMapping();
+		} else {
+			mSpanSizeLookup.detectUniformSpanSize(state.getItemCount());
 		}
 		super.onLayoutChildren(recycler, state);
 		if (DEBUG) {
@@ -171,7 +184,7 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 
 	@Override
 	public void onItemsAdded(RecyclerView recyclerView, int positionStart, int itemCount) {
-		mSpanSizeLookup.invalidateSpanIndexCache();
+		mSpanSizeLookup.invalidateSpanIndexCache(positionStart);
 	}
 
 	@Override
@@ -181,17 +194,18 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 
 	@Override
 	public void onItemsRemoved(RecyclerView recyclerView, int positionStart, int itemCount) {
-		mSpanSizeLookup.invalidateSpanIndexCache();
+		mSpanSizeLookup.invalidateSpanIndexCache(positionStart);
 	}
 
 	@Override
 	public void onItemsUpdated(RecyclerView recyclerView, int positionStart, int itemCount) {
-		mSpanSizeLookup.invalidateSpanIndexCache();
+		// an updated item may occupy a different number of spans
+		mSpanSizeLookup.invalidateSpanIndexCache(positionStart);
 	}
 
 	@Override
 	public void onItemsMoved(RecyclerView recyclerView, int from, int to, int itemCount) {
-		mSpanSizeLookup.invalidateSpanIndexCache();
+		mSpanSizeLookup.invalidateSpanIndexCache(Math.min(from, to));
 	}
 
 	@Override
@@ -229,6 +243,31 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 		mSpanSizeLookup = spanSizeLookup;
 	}
 
+	/**
+	 * Sets whether every item has the same size when it occupies the same number of spans, and
+	 * the same decorations and margins. Items are then measured once for each span
+	 * configuration, and views that already have that size are not measured again. The scroll
+	 * offset, extent and range are then calculated exactly from the span group of the first
+	 * child and the row size, which also allows {@link #scrollToOffset(int)}.
+	 *
+	 * @param fixedItemSize Whether items have a fixed size
+	 */
+	public void setFixedItemSize(boolean fixedItemSize) {
+		mFixedItemSize = fixedItemSize;
+		mFixedOtherSize = -1;
+		requestLayout();
+	}
+
+	/**
+	 * Returns whether items are assumed to have a fixed size.
+	 *
+	 * @return True if items are measured once for each span configuration
+	 * @see #setFixedItemSize(boolean)
+	 */
+	public boolean isFixedItemSize() {
+		return mFixedItemSize;
+	}
+
 	/**
 	 * Returns the current {@link SpanSizeLookup} used by the GridLayoutManager.
 	 *
@@ -387,6 +426,14 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 			}
 
 			int spanSize = getSpanSize(recycler, state, getPosition(view));
+			if (mFixedItemSize) {
+				measureFixedSizeChild(view, mSizePerSpan * spanSize);
+				final int size = mOrientationHelper.getDecoratedMeasurement(view);
+				if (size > maxSize) {
+					maxSize = size;
+				}
+				continue;
+			}
 			final int spec = View.MeasureSpec.makeMeasureSpec(mSizePerSpan * spanSize,
 					View.MeasureSpec.EXACTLY);
 			final LayoutParams lp = (LayoutParams) view.getLayoutParams();
@@ -409,7 +456,7 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 
 		// views that did not measure the maxSize has to be re-measured
 		final int maxMeasureSpec = getMainDirSpec(maxSize);
-		for (int i = 0; i < count; i ++) {
+		for (int i = 0; i < count && !mFixedItemSize; i ++) {
 			final View view = mSet[i];
 			if (mOrientationHelper.getDecoratedMeasurement(view) != maxSize) {
 				int spanSize = getSpanSize(recycler, state, getPosition(view));
@@ -472,6 +519,136 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 		Arrays.fill(mSet, null);
 	}
 
+	/**
+	 * Measures a fixed-size item with the specs of the first item measured for the same size in
+	 * the other direction, unless it already has that size.
+	 *
+	 * @param otherSize Size of the spans occupied by the item
+	 */
+	private void measureFixedSizeChild(View view, int otherSize) {
+		if (otherSize != mFixedOtherSize || mOrientation != mFixedOrientation) {
+			final int spec = View.MeasureSpec.makeMeasureSpec(otherSize, View.MeasureSpec.EXACTLY);
+			final LayoutParams lp = (LayoutParams) view.getLayoutParams();
+			if (mOrientation == VERTICAL) {
+				measureChildWithDecorationsAndMargin(view, spec, getMainDirSpec(lp.height));
+			} else {
+				measureChildWithDecorationsAndMargin(view, getMainDirSpec(lp.width), spec);
+			}
+			mFixedOtherSize = otherSize;
+			mFixedOrientation = mOrientation;
+			mFixedWidthSpec = View.MeasureSpec.makeMeasureSpec(view.getMeasuredWidth(),
+					View.MeasureSpec.EXACTLY);
+			mFixedHeightSpec = View.MeasureSpec.makeMeasureSpec(view.getMeasuredHeight(),
+					View.MeasureSpec.EXACTLY);
+			return;
+		}
+		// keeps the decor insets used by layoutDecorated up to date
+		calculateItemDecorationsForChild(view, mDecorInsets);
+		if (!view.isLayoutRequested()
+				&& view.getMeasuredWidth() == View.MeasureSpec.getSize(mFixedWidthSpec)
+				&& view.getMeasuredHeight() == View.MeasureSpec.getSize(mFixedHeightSpec)) {
+			return;
+		}
+		view.measure(mFixedWidthSpec, mFixedHeightSpec);
+	}
+
+	@Override
+	int computeScrollOffset(RecyclerView.State state) {
+		if (!canComputeFixedScroll(state)) {
+			return super.computeScrollOffset(state);
+		}
+		final View startChild = getChildClosestToStart();
+		int startRow = mSpanSizeLookup.getSpanGroupIndex(getPosition(startChild), mSpanCount);
+		if (mShouldReverseLayout) {
+			startRow = getRowCount(state.getItemCount()) - 1 - startRow;
+		}
+		return ScrollbarHelper.computeFixedScrollOffset(mOrientationHelper, startChild, startRow,
+				getFixedRowSize());
+	}
+
+	@Override
+	int computeScrollExtent(RecyclerView.State state) {
+		if (!canComputeFixedScroll(state)) {
+			return super.computeScrollExtent(state);
+		}
+		return ScrollbarHelper.computeFixedScrollExtent(mOrientationHelper,
+				getRowCount(state.getItemCount()), getFixedRowSize());
+	}
+
+	@Override
+	int computeScrollRange(RecyclerView.State state) {
+		if (!canComputeFixedScroll(state)) {
+			return super.computeScrollRange(state);
+		}
+		return ScrollbarHelper.computeFixedScrollRange(getRowCount(state.getItemCount()),
+				getFixedRowSize());
+	}
+
+	/**
+	 * Scrolls so that <code>offset</code> pixels of the content are before the start of the
+	 * RecyclerView, the same offset as {@link #computeVerticalScrollOffset(RecyclerView.State)}
+	 * returns. The position is calculated from the row size, so the next layout starts at that
+	 * position and the rows before it are never laid out.
+	 * <p>
+	 * Rows are assumed to have the size of the row closest to the start.
+	 *
+	 * @param offset The scroll offset, in pixels
+	 * @see #setFixedItemSize(boolean)
+	 */
+	public void scrollToOffset(int offset) {
+		if (!mFixedItemSize) {
+			throw new IllegalStateException("Scrolling to an offset requires fixed-size items");
+		}
+		final int itemCount = getItemCount();
+		if (getChildCount() == 0 || itemCount == 0) {
+			return;
+		}
+		final int rowSize = getFixedRowSize();
+		if (rowSize <= 0) {
+			return;
+		}
+		final int maxOffset = Math.max(0,
+				getRowCount(itemCount) * rowSize - mOrientationHelper.getTotalSpace());
+		offset = Math.max(0, Math.min(offset, maxOffset));
+		if (mShouldReverseLayout) {
+			// rows are counted from the end
+			offset = maxOffset - offset;
+		}
+		scrollToPositionWithOffset(getFirstPositionInSpanGroup(offset / rowSize, itemCount),
+				-(offset % rowSize));
+	}
+
+	private boolean canComputeFixedScroll(RecyclerView.State state) {
+		return mFixedItemSize && isSmoothScrollbarEnabled() && getChildCount() > 0
+				&& state.getItemCount() > 0;
+	}
+
+	private int getFixedRowSize() {
+		return mOrientationHelper.getDecoratedMeasurement(getChildClosestToStart());
+	}
+
+	private int getRowCount(int itemCount) {
+		return mSpanSizeLookup.getSpanGroupIndex(itemCount - 1, mSpanCount) + 1;
+	}
+
+	/**
+	 * Span group indices never decrease, so the first position of a group is found by a binary
+	 * search.
+	 */
+	private int getFirstPositionInSpanGroup(int group, int itemCount) {
+		int low = 0;
+		int high = itemCount - 1;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (mSpanSizeLookup.getSpanGroupIndex(mid, mSpanCount) < group) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
 	private int getMainDirSpec(int dim) {
 		if (dim < 0) {
 			return MAIN_DIR_SPEC;
@@ -575,10 +752,38 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 	 */
 	public static abstract class SpanSizeLookup {
 
+		/**
+		 * Number of positions between checkpoints.
+		 */
+		private static final int CHECKPOINT_INTERVAL = 64;
+
 		final SparseIntArray mSpanIndexCache = new SparseIntArray();
 
 		private boolean mCacheSpanIndices = false;
 
+		/**
+		 * Span group and span index reached before every {@link #CHECKPOINT_INTERVAL}th
+		 * position, packed as <code>group &lt;&lt; 32 | span</code>, so that both can be
+		 * calculated from the closest checkpoint instead of from position 0.
+		 */
+		private long[] mCheckpoints = new long[16];
+		private int mCheckpointCount;
+		private int mCheckpointSpanCount;
+
+		/**
+		 * Number of positions from position 0 that were all found to occupy
+		 * {@link #mDetectedSpanSize} spans, when {@link #getUniformSpanSize()} is not
+		 * overridden.
+		 */
+		private int mDetectedCount;
+		private int mDetectedSpanSize;
+
+		/**
+		 * Whether the item at {@link #mDetectedCount} occupies a different number of spans, so
+		 * that detection stops there until it changes.
+		 */
+		private boolean mDetectedMixed;
+
 		/**
 		 * Returns the number of span occupied by the item at <code>position</code>.
 		 *
@@ -587,6 +792,56 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 		 */
 		abstract public int getSpanSize(int position);
 
+		/**
+		 * Returns the number of spans occupied by every item, if they all occupy the same
+		 * number. Span indices and span group indices are then calculated directly.
+		 * <p>
+		 * If this returns 0, the layout manager finds out on each layout by calling
+		 * {@link #getSpanSize(int)} for the items that it has not checked since they last
+		 * changed, and stops at the first item with a different size. Override this to skip
+		 * that pass when the size is known in advance.
+		 *
+		 * @return The number of spans occupied by every item, or 0 if it is not known
+		 */
+		public int getUniformSpanSize() {
+			return 0;
+		}
+
+		/**
+		 * @return the number of spans occupied by every item up to and including a position,
+		 * if they are known to be the same, or 0
+		 */
+		private int getUniformSpanSize(int position) {
+			final int uniformSpanSize = getUniformSpanSize();
+			if (uniformSpanSize > 0) {
+				return uniformSpanSize;
+			}
+			return position < mDetectedCount ? mDetectedSpanSize : 0;
+		}
+
+		/**
+		 * Checks whether the items that were not checked since they last changed occupy the same
+		 * number of spans as the ones before them.
+		 *
+		 * @param itemCount The number of items in the adapter
+		 */
+		void detectUniformSpanSize(int itemCount) {
+			if (getUniformSpanSize() > 0 || mDetectedMixed) {
+				return;
+			}
+			if (mDetectedCount == 0 && itemCount > 0) {
+				mDetectedSpanSize = getSpanSize(0);
+				mDetectedCount = 1;
+			}
+			while (mDetectedCount < itemCount) {
+				if (getSpanSize(mDetectedCount) != mDetectedSpanSize) {
+					mDetectedMixed = true;
+					return;
+				}
+				mDetectedCount++;
+			}
+		}
+
 		/**
 		 * Sets whether the results of {@link #getSpanIndex(int, int)} method should be cached or
 		 * not. By default these values are not cached. If you are not overriding
@@ -604,6 +859,53 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 		 */
 		public void invalidateSpanIndexCache() {
 			mSpanIndexCache.clear();
+			mCheckpointCount = 0;
+			mDetectedCount = 0;
+			mDetectedMixed = false;
+		}
+
+		/**
+		 * Clears the cached span indices that may have changed because the items at or after a
+		 * position changed. Span indices and checkpoints before the position are kept, and the
+		 * rest are only calculated again up to the positions that are looked up.
+		 *
+		 * @param positionStart The first position that changed
+		 */
+		public void invalidateSpanIndexCache(int positionStart) {
+			positionStart = Math.max(0, positionStart);
+
+			// the span index of a position only depends on the items up to it
+			final int size = mSpanIndexCache.size();
+			if (size > 0 && mSpanIndexCache.keyAt(size - 1) >= positionStart) {
+				int kept = 0;
+				while (kept < size && mSpanIndexCache.keyAt(kept) < positionStart) {
+					kept++;
+				}
+				if (kept == 0) {
+					mSpanIndexCache.clear();
+				} else {
+					final int[] keys = new int[kept];
+					final int[] values = new int[kept];
+					for (int i = 0; i < kept; i++) {
+						keys[i] = mSpanIndexCache.keyAt(i);
+						values[i] = mSpanIndexCache.valueAt(i);
+					}
+					mSpanIndexCache.clear();
+					for (int i = 0; i < kept; i++) {
+						mSpanIndexCache.append(keys[i], values[i]);
+					}
+				}
+			}
+
+			// checkpoints only depend on the items before them
+			mCheckpointCount = Math.min(mCheckpointCount,
+					positionStart / CHECKPOINT_INTERVAL + 1);
+
+			// the items before the position are still known to have the same size
+			if (positionStart <= mDetectedCount) {
+				mDetectedCount = positionStart;
+				mDetectedMixed = false;
+			}
 		}
 
 		/**
@@ -616,7 +918,7 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 		}
 
 		int getCachedSpanIndex(int position, int spanCount) {
-			if (!mCacheSpanIndices) {
+			if (!mCacheSpanIndices || getUniformSpanSize(position) > 0) {
 				return getSpanIndex(position, spanCount);
 			}
 			final int existing = mSpanIndexCache.get(position, -1);
@@ -631,12 +933,11 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 		/**
 		 * Returns the final span index of the provided position.
 		 * <p>
-		 * If you have a faster way to calculate span index for your items, you should override
-		 * this method. Otherwise, you should enable span index cache
-		 * ({@link #setSpanIndexCacheEnabled(boolean)}) for better performance. When caching is
-		 * disabled, default implementation traverses all items from 0 to
-		 * <code>position</code>. When caching is enabled, it calculates from the closest cached
-		 * value before the <code>position</code>.
+		 * If all items occupy the same number of spans, the span index is calculated directly,
+		 * see {@link #getUniformSpanSize()}. Otherwise, the default
+		 * implementation traverses the items from the closest checkpoint before
+		 * <code>position</code>, which are kept every few positions. You can also enable span
+		 * index cache ({@link #setSpanIndexCacheEnabled(boolean)}) to remember each result.
 		 * <p>
 		 * If you override this method, you need to make sure it is consistent with
 		 * {@link #getSpanSize(int)}. GridLayoutManager does not call this method for
@@ -652,56 +953,21 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 		 * <code>spanCount</code>(exclusive)
 		 */
 		public int getSpanIndex(int position, int spanCount) {
+			final int uniformSpanSize = getUniformSpanSize(position);
+			if (uniformSpanSize > 0) {
+				return (position % getItemsPerGroup(uniformSpanSize, spanCount)) * uniformSpanSize;
+			}
 			int positionSpanSize = getSpanSize(position);
 			if (positionSpanSize == spanCount) {
 				return 0; // quick return for full-span items
 			}
-			int span = 0;
-			int startPos = 0;
-			// If caching is enabled, try to jump
-			if (mCacheSpanIndices && mSpanIndexCache.size() > 0) {
-				int prevKey = findReferenceIndexFromCache(position);
-				if (prevKey >= 0) {
-					span = mSpanIndexCache.get(prevKey) + getSpanSize(prevKey);
-					startPos = prevKey + 1;
-				}
-			}
-			for (int i = startPos; i < position; i++) {
-				int size = getSpanSize(i);
-				span += size;
-				if (span == spanCount) {
-					span = 0;
-				} else if (span > spanCount) {
-					// did not fit, moving to next row / column
-					span = size;
-				}
-			}
+			final int span = (int) getSpanState(position, spanCount);
 			if (span + positionSpanSize <= spanCount) {
 				return span;
 			}
 			return 0;
 		}
 
-		int findReferenceIndexFromCache(int position) {
-			int lo = 0;
-			int hi = mSpanIndexCache.size() - 1;
-
-			while (lo <= hi) {
-				final int mid = (lo + hi) >>> 1;
-				final int midVal = mSpanIndexCache.keyAt(mid);
-				if (midVal < position) {
-					lo = mid + 1;
-				} else {
-					hi = mid - 1;
-				}
-			}
-			int index = lo - 1;
-			if (index >= 0 && index < mSpanIndexCache.size()) {
-				return mSpanIndexCache.keyAt(index);
-			}
-			return -1;
-		}
-
 		/**
 		 * Returns the index of the group this position belongs.
 		 * <p>
@@ -713,10 +979,56 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 		 * @return The index of the span group including the item at the given adapter position
 		 */
 		public int getSpanGroupIndex(int adapterPosition, int spanCount) {
-			int span = 0;
-			int group = 0;
-			int positionSpanSize = getSpanSize(adapterPosition);
-			for (int i = 0; i < adapterPosition; i++) {
+			final int uniformSpanSize = getUniformSpanSize(adapterPosition);
+			if (uniformSpanSize > 0) {
+				return adapterPosition / getItemsPerGroup(uniformSpanSize, spanCount);
+			}
+			final long state = getSpanState(adapterPosition, spanCount);
+			final int span = (int) state;
+			int group = (int) (state >>> 32);
+			if (span + getSpanSize(adapterPosition) > spanCount) {
+				group++;
+			}
+			return group;
+		}
+
+		private static int getItemsPerGroup(int uniformSpanSize, int spanCount) {
+			return Math.max(1, spanCount / uniformSpanSize);
+		}
+
+		/**
+		 * Returns the span group and span index reached after the items before a position,
+		 * before checking whether the item at the position fits.
+		 *
+		 * @return <code>group &lt;&lt; 32 | span</code>
+		 */
+		private long getSpanState(int position, int spanCount) {
+			if (spanCount != mCheckpointSpanCount) {
+				mCheckpointSpanCount = spanCount;
+				mCheckpointCount = 0;
+			}
+			if (mCheckpointCount == 0) {
+				mCheckpoints[0] = 0;
+				mCheckpointCount = 1;
+			}
+			final int checkpoint = position / CHECKPOINT_INTERVAL;
+			while (mCheckpointCount <= checkpoint) {
+				if (mCheckpointCount == mCheckpoints.length) {
+					mCheckpoints = Arrays.copyOf(mCheckpoints, mCheckpointCount * 2);
+				}
+				final int start = (mCheckpointCount - 1) * CHECKPOINT_INTERVAL;
+				mCheckpoints[mCheckpointCount] = advanceSpanState(mCheckpoints[mCheckpointCount - 1],
+						start, start + CHECKPOINT_INTERVAL, spanCount);
+				mCheckpointCount++;
+			}
+			return advanceSpanState(mCheckpoints[checkpoint], checkpoint * CHECKPOINT_INTERVAL,
+					position, spanCount);
+		}
+
+		private long advanceSpanState(long state, int start, int end, int spanCount) {
+			int span = (int) state;
+			int group = (int) (state >>> 32);
+			for (int i = start; i < end; i++) {
 				int size = getSpanSize(i);
 				span += size;
 				if (span == spanCount) {
@@ -728,10 +1040,7 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 					group++;
 				}
 			}
-			if (span + positionSpanSize > spanCount) {
-				group++;
-			}
-			return group;
+			return ((long) group << 32) | span;
 		}
 	}
 
@@ -751,8 +1060,8 @@ public class FastGridLayoutManager extends LinearLayoutManager {
 		}
 
 		@Override
-		public int getSpanIndex(int position, int spanCount) {
-			return position % spanCount;
+		public int getUniformSpanSize() {
+			return 1;
 		}
 	}
 
@@ -0,0 +1,185 @@
+package com.dreamynomad.colorcam.layoutmanager;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.support.v7.widget.RecyclerView;
+import android.view.MotionEvent;
+
+/**
+ * A draggable scrollbar thumb for a vertical {@link FastGridLayoutManager} with fixed-size items.
+ * <p/>
+ * The thumb is placed with the exact scroll offset of the layout manager. Dragging it converts
+ * the touch position to an offset and jumps there with
+ * {@link FastGridLayoutManager#scrollToOffset(int)}, so only the rows that end up on screen are
+ * laid out, however far the thumb moves.
+ */
+public class FastScroller extends RecyclerView.ItemDecoration
+		implements RecyclerView.OnItemTouchListener {
+
+	private static final int THUMB_WIDTH_DP = 6;
+	private static final int THUMB_MIN_HEIGHT_DP = 48;
+	private static final int TOUCH_WIDTH_DP = 32;
+
+	/**
+	 * Time that the thumb stays visible after scrolling stops.
+	 */
+	private static final long HIDE_DELAY = 1500;
+
+	private final int mThumbWidth;
+	private final int mThumbMinHeight;
+	private final int mTouchWidth;
+	private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	private final RectF mThumb = new RectF();
+
+	private RecyclerView mRecyclerView;
+	private FastGridLayoutManager mLayoutManager;
+
+	private boolean mVisible;
+	private boolean mDragging;
+
+	/**
+	 * Distance from the top of the thumb to the touch that started the drag.
+	 */
+	private float mTouchOffset;
+
+	private final Runnable mHide = new Runnable() {
+		@Override
+		public void run() {
+			if (!mDragging) {
+				mVisible = false;
+				mRecyclerView.invalidate();
+			}
+		}
+	};
+
+	private final RecyclerView.OnScrollListener mOnScrollListener =
+			new RecyclerView.OnScrollListener() {
+				@Override
+				public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+					if (dy != 0) {
+						show();
+					}
+				}
+			};
+
+	public FastScroller(Context context, int color) {
+		final float density = context.getResources().getDisplayMetrics().density;
+
+		mThumbWidth = Math.round(THUMB_WIDTH_DP * density);
+		mThumbMinHeight = Math.round(THUMB_MIN_HEIGHT_DP * density);
+		mTouchWidth = Math.round(TOUCH_WIDTH_DP * density);
+		mPaint.setColor(color);
+	}
+
+	/**
+	 * Adds the thumb to a RecyclerView, in place of its own scrollbar.
+	 *
+	 * @param recyclerView a RecyclerView laid out by a {@link FastGridLayoutManager} with fixed
+	 *                     item sizes
+	 */
+	public void attachToRecyclerView(RecyclerView recyclerView) {
+		if (!(recyclerView.getLayoutManager() instanceof FastGridLayoutManager)) {
+			throw new IllegalArgumentException("FastScroller requires a FastGridLayoutManager");
+		}
+
+		mRecyclerView = recyclerView;
+		mLayoutManager = (FastGridLayoutManager) recyclerView.getLayoutManager();
+
+		recyclerView.setVerticalScrollBarEnabled(false);
+		recyclerView.addItemDecoration(this);
+		recyclerView.addOnItemTouchListener(this);
+		recyclerView.addOnScrollListener(mOnScrollListener);
+	}
+
+	@Override
+	public void onDrawOver(Canvas c, RecyclerView parent, RecyclerView.State state) {
+		if ((mVisible || mDragging) && updateThumb()) {
+			c.drawRoundRect(mThumb, mThumbWidth / 2f, mThumbWidth / 2f, mPaint);
+		}
+	}
+
+	@Override
+	public boolean onInterceptTouchEvent(RecyclerView rv, MotionEvent e) {
+		if (e.getActionMasked() != MotionEvent.ACTION_DOWN || !mVisible || !updateThumb()) {
+			return false;
+		}
+
+		if (e.getX() < rv.getWidth() - mTouchWidth || e.getY() < mThumb.top ||
+				e.getY() > mThumb.bottom) {
+			return false;
+		}
+
+		mDragging = true;
+		mTouchOffset = e.getY() - mThumb.top;
+		rv.removeCallbacks(mHide);
+		rv.stopScroll();
+		rv.getParent().requestDisallowInterceptTouchEvent(true);
+		return true;
+	}
+
+	@Override
+	public void onTouchEvent(RecyclerView rv, MotionEvent e) {
+		switch (e.getActionMasked()) {
+			case MotionEvent.ACTION_MOVE:
+				scrollTo(e.getY());
+				break;
+			case MotionEvent.ACTION_UP:
+			case MotionEvent.ACTION_CANCEL:
+				mDragging = false;
+				show();
+				break;
+		}
+	}
+
+	@Override
+	public void onRequestDisallowInterceptTouchEvent(boolean disallowIntercept) {
+	}
+
+	private void show() {
+		mVisible = true;
+		mRecyclerView.removeCallbacks(mHide);
+		mRecyclerView.postDelayed(mHide, HIDE_DELAY);
+		mRecyclerView.invalidate();
+	}
+
+	/**
+	 * Jumps to the offset that puts the top of the thumb under the touch, less the distance
+	 * to where the drag started.
+	 */
+	private void scrollTo(float y) {
+		final int range = mRecyclerView.computeVerticalScrollRange();
+		final int extent = mRecyclerView.computeVerticalScrollExtent();
+		final float track = mRecyclerView.getHeight() - mThumb.height();
+
+		if (range <= extent || track <= 0) {
+			return;
+		}
+
+		final float fraction = Math.max(0f, Math.min(1f, (y - mTouchOffset) / track));
+		mLayoutManager.scrollToOffset(Math.round(fraction * (range - extent)));
+	}
+
+	/**
+	 * @return whether the content is larger than the RecyclerView, and so has a thumb
+	 */
+	private boolean updateThumb() {
+		final int range = mRecyclerView.computeVerticalScrollRange();
+		final int extent = mRecyclerView.computeVerticalScrollExtent();
+		final int offset = mRecyclerView.computeVerticalScrollOffset();
+
+		if (range <= extent) {
+			return false;
+		}
+
+		final int height = mRecyclerView.getHeight();
+		final float thumbHeight = Math.max(mThumbMinHeight, (float) height * extent / range);
+		final float top = (height - thumbHeight) *
+				Math.max(0f, Math.min(1f, (float) offset / (range - extent)));
+		final int right = mRecyclerView.getWidth();
+
+		mThumb.set(right - mThumbWidth, top, right, top + thumbHeight);
+		return true;
+	}
+}
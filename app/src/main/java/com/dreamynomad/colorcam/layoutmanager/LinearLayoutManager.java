@@ -123,6 +123,18 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
 	 * */
 	final AnchorInfo mAnchorInfo;
 
+	private OnScrollByListener mOnScrollByListener;
+
+	/**
+	 * Called when the children are scrolled by the user or a fling.
+	 */
+	public interface OnScrollByListener {
+		/**
+		 * @param scrolled the distance scrolled in pixels, positive towards the end of the list
+		 */
+		public void onScrollBy(int scrolled);
+	}
+
 	/**
 	 * Creates a vertical LinearLayoutManager
 	 *
@@ -977,7 +989,7 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
 		return computeScrollRange(state);
 	}
 
-	private int computeScrollOffset(RecyclerView.State state) {
+	int computeScrollOffset(RecyclerView.State state) {
 		if (getChildCount() == 0) {
 			return 0;
 		}
@@ -986,7 +998,7 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
 				mSmoothScrollbarEnabled, mShouldReverseLayout);
 	}
 
-	private int computeScrollExtent(RecyclerView.State state) {
+	int computeScrollExtent(RecyclerView.State state) {
 		if (getChildCount() == 0) {
 			return 0;
 		}
@@ -995,7 +1007,7 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
 				mSmoothScrollbarEnabled);
 	}
 
-	private int computeScrollRange(RecyclerView.State state) {
+	int computeScrollRange(RecyclerView.State state) {
 		if (getChildCount() == 0) {
 			return 0;
 		}
@@ -1004,6 +1016,15 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
 				mSmoothScrollbarEnabled);
 	}
 
+	/**
+	 * Sets the listener that is notified whenever the children are scrolled.
+	 *
+	 * @param listener the listener, or null to remove it
+	 */
+	public void setOnScrollByListener(OnScrollByListener listener) {
+		mOnScrollByListener = listener;
+	}
+
 	/**
 	 * When smooth scrollbar is enabled, the position and size of the scrollbar thumb is computed
 	 * based on the number of visible pixels in the visible items. This however assumes that all
@@ -1093,6 +1114,9 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
 		if (DEBUG) {
 			Log.d(TAG, "scroll req: " + dy + " scrolled: " + scrolled);
 		}
+		if (mOnScrollByListener != null && scrolled != 0) {
+			mOnScrollByListener.onScrollBy(scrolled);
+		}
 		return scrolled;
 	}
 
@@ -1405,7 +1429,7 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
 	 *
 	 * @return The child closes to start of the layout from user's perspective.
 	 */
-	private View getChildClosestToStart() {
+	View getChildClosestToStart() {
 		return getChildAt(mShouldReverseLayout ? getChildCount() - 1 : 0);
 	}
 
@@ -1415,7 +1439,7 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
 	 *
 	 * @return The child closes to end of the layout from user's perspective.
 	 */
-	private View getChildClosestToEnd() {
+	View getChildClosestToEnd() {
 		return getChildAt(mShouldReverseLayout ? 0 : getChildCount() - 1);
 	}
 
@@ -93,4 +93,38 @@ class ScrollbarHelper {
 		// estimate a size for full list.
 		return (int) ((float) laidOutArea / laidOutRange * state.getItemCount());
 	}
+
+	/**
+	 * Exact offset for a layout whose rows all have the same size.
+	 *
+	 * @param startChild View closest to start of the list. (top or left)
+	 * @param startRow   Row of <code>startChild</code>, counted from the start of the list
+	 * @param rowSize    Decorated size of every row
+	 */
+	static int computeFixedScrollOffset(OrientationHelper orientation, View startChild,
+	                                    int startRow, int rowSize) {
+		return startRow * rowSize + orientation.getStartAfterPadding()
+				- orientation.getDecoratedStart(startChild);
+	}
+
+	/**
+	 * Exact extent for a layout whose rows all have the same size.
+	 *
+	 * @param rowCount Number of rows in the list
+	 * @param rowSize  Decorated size of every row
+	 */
+	static int computeFixedScrollExtent(OrientationHelper orientation, int rowCount,
+	                                    int rowSize) {
+		return Math.min(orientation.getTotalSpace(), rowCount * rowSize);
+	}
+
+	/**
+	 * Exact range for a layout whose rows all have the same size.
+	 *
+	 * @param rowCount Number of rows in the list
+	 * @param rowSize  Decorated size of every row
+	 */
+	static int computeFixedScrollRange(int rowCount, int rowSize) {
+		return rowCount * rowSize;
+	}
 }
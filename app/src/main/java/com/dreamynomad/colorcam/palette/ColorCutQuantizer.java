@@ -0,0 +1,351 @@
+package com.dreamynomad.colorcam.palette;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Histogram-based median-cut quantizer that works directly on ARGB pixel buffers.
+ * <p/>
+ * Colors are reduced to 5 bits per channel and counted in a fixed histogram, so the cost per
+ * pixel is a shift, a mask and an increment. Unlike the palette-v7 23.0.1 quantizer, which
+ * counts full 8-bit colors, swatches are therefore averaged from 5-bit colors, and close colors
+ * can come out slightly different. The distinct colors are then repeatedly split
+ * along their longest dimension at the population median until the requested number of boxes
+ * exists, and each box is averaged into a {@link Swatch}.
+ * <p/>
+ * An instance keeps its scratch arrays between calls and is not thread-safe; use
+ * {@link #generate(int[], int, int)} to get a per-thread instance.
+ */
+public final class ColorCutQuantizer {
+
+	private static final int QUANTIZE_WORD_WIDTH = 5;
+	private static final int QUANTIZE_WORD_MASK = (1 << QUANTIZE_WORD_WIDTH) - 1;
+	private static final int HISTOGRAM_SIZE = 1 << (QUANTIZE_WORD_WIDTH * 3);
+
+	private static final int COMPONENT_RED = 0;
+	private static final int COMPONENT_GREEN = 1;
+	private static final int COMPONENT_BLUE = 2;
+
+	private static final float BLACK_MAX_LIGHTNESS = 0.05f;
+	private static final float WHITE_MIN_LIGHTNESS = 0.95f;
+
+	private static final ThreadLocal<ColorCutQuantizer> sQuantizers =
+			new ThreadLocal<ColorCutQuantizer>() {
+				@Override
+				protected ColorCutQuantizer initialValue() {
+					return new ColorCutQuantizer();
+				}
+			};
+
+	private final int[] mHistogram = new int[HISTOGRAM_SIZE];
+	private final int[] mColors = new int[HISTOGRAM_SIZE];
+	private final float[] mTempHsl = new float[3];
+
+	// boxes, stored as parallel arrays of [lower, upper] indices into mColors
+	private int[] mBoxLower = new int[0];
+	private int[] mBoxUpper = new int[0];
+	private int[] mBoxVolume = new int[0];
+
+	/**
+	 * Quantizes the pixels using the calling thread's quantizer.
+	 *
+	 * @param pixels    ARGB pixels
+	 * @param length    number of pixels to read from the start of the buffer
+	 * @param maxColors the maximum number of swatches to generate
+	 * @return the generated swatches, unsorted
+	 */
+	public static List<Swatch> generate(int[] pixels, int length, int maxColors) {
+		return sQuantizers.get().quantize(pixels, length, maxColors);
+	}
+
+	/**
+	 * @param pixels    ARGB pixels
+	 * @param length    number of pixels to read from the start of the buffer
+	 * @param maxColors the maximum number of swatches to generate
+	 * @return the generated swatches, unsorted
+	 */
+	public List<Swatch> quantize(int[] pixels, int length, int maxColors) {
+		if (maxColors < 1) {
+			throw new IllegalArgumentException("maxColors must be at least 1: " + maxColors);
+		}
+
+		final int[] hist = mHistogram;
+		Arrays.fill(hist, 0);
+
+		for (int i = 0; i < length; i++) {
+			final int pixel = pixels[i];
+			hist[(((pixel >> 19) & QUANTIZE_WORD_MASK) << (QUANTIZE_WORD_WIDTH * 2))
+					| (((pixel >> 11) & QUANTIZE_WORD_MASK) << QUANTIZE_WORD_WIDTH)
+					| ((pixel >> 3) & QUANTIZE_WORD_MASK)]++;
+		}
+
+		// collect the colors that are present and not filtered out
+		final int[] colors = mColors;
+		int distinctColorCount = 0;
+
+		for (int color = 0; color < HISTOGRAM_SIZE; color++) {
+			if (hist[color] > 0) {
+				if (shouldIgnoreColor(approximateToRgb888(color))) {
+					hist[color] = 0;
+				} else {
+					colors[distinctColorCount++] = color;
+				}
+			}
+		}
+
+		final List<Swatch> swatches = new ArrayList<>(Math.min(maxColors, distinctColorCount));
+
+		if (distinctColorCount <= maxColors) {
+			// the image has few enough colors to be used directly
+			for (int i = 0; i < distinctColorCount; i++) {
+				final int color = colors[i];
+				swatches.add(new Swatch(approximateToRgb888(color), hist[color]));
+			}
+		} else {
+			final int boxCount = splitBoxes(distinctColorCount, maxColors);
+
+			for (int i = 0; i < boxCount; i++) {
+				final Swatch swatch = averageColor(mBoxLower[i], mBoxUpper[i]);
+
+				if (!shouldIgnoreColor(swatch.getRgb())) {
+					swatches.add(swatch);
+				}
+			}
+		}
+
+		return swatches;
+	}
+
+	/**
+	 * Median-cut the distinct colors until there are {@code maxColors} boxes, or no box can be
+	 * split any further.
+	 *
+	 * @return the number of boxes
+	 */
+	private int splitBoxes(int distinctColorCount, int maxColors) {
+		if (mBoxLower.length < maxColors) {
+			mBoxLower = new int[maxColors];
+			mBoxUpper = new int[maxColors];
+			mBoxVolume = new int[maxColors];
+		}
+
+		mBoxLower[0] = 0;
+		mBoxUpper[0] = distinctColorCount - 1;
+		mBoxVolume[0] = volume(0, distinctColorCount - 1);
+
+		int boxCount = 1;
+
+		while (boxCount < maxColors) {
+			// always split the largest box that can be split
+			int box = -1;
+
+			for (int i = 0; i < boxCount; i++) {
+				if (mBoxUpper[i] > mBoxLower[i] && (box < 0 || mBoxVolume[i] > mBoxVolume[box])) {
+					box = i;
+				}
+			}
+
+			if (box < 0) {
+				break;
+			}
+
+			final int lower = mBoxLower[box];
+			final int upper = mBoxUpper[box];
+			final int split = findSplitPoint(lower, upper);
+
+			mBoxUpper[box] = split;
+			mBoxVolume[box] = volume(lower, split);
+
+			mBoxLower[boxCount] = split + 1;
+			mBoxUpper[boxCount] = upper;
+			mBoxVolume[boxCount] = volume(split + 1, upper);
+			boxCount++;
+		}
+
+		return boxCount;
+	}
+
+	/**
+	 * Sorts the colors in the box by their longest dimension and finds the population median.
+	 *
+	 * @return the index of the last color in the lower half
+	 */
+	private int findSplitPoint(int lower, int upper) {
+		final int[] colors = mColors;
+		final int[] hist = mHistogram;
+		final int dimension = getLongestColorDimension(lower, upper);
+
+		// put the longest dimension in the most significant bits, so that a primitive sort
+		// orders by that dimension
+		modifySignificantOctet(dimension, lower, upper);
+		Arrays.sort(colors, lower, upper + 1);
+		modifySignificantOctet(dimension, lower, upper);
+
+		int population = 0;
+		for (int i = lower; i <= upper; i++) {
+			population += hist[colors[i]];
+		}
+
+		final int midPoint = population / 2;
+		int count = 0;
+
+		for (int i = lower; i <= upper; i++) {
+			count += hist[colors[i]];
+
+			if (count >= midPoint) {
+				// never leave the upper box empty
+				return Math.min(i, upper - 1);
+			}
+		}
+
+		return lower;
+	}
+
+	private int getLongestColorDimension(int lower, int upper) {
+		int minRed = QUANTIZE_WORD_MASK, minGreen = QUANTIZE_WORD_MASK, minBlue = QUANTIZE_WORD_MASK;
+		int maxRed = 0, maxGreen = 0, maxBlue = 0;
+
+		for (int i = lower; i <= upper; i++) {
+			final int color = mColors[i];
+			final int r = quantizedRed(color);
+			final int g = quantizedGreen(color);
+			final int b = quantizedBlue(color);
+
+			if (r < minRed) minRed = r;
+			if (r > maxRed) maxRed = r;
+			if (g < minGreen) minGreen = g;
+			if (g > maxGreen) maxGreen = g;
+			if (b < minBlue) minBlue = b;
+			if (b > maxBlue) maxBlue = b;
+		}
+
+		final int redLength = maxRed - minRed;
+		final int greenLength = maxGreen - minGreen;
+		final int blueLength = maxBlue - minBlue;
+
+		if (redLength >= greenLength && redLength >= blueLength) {
+			return COMPONENT_RED;
+		} else if (greenLength >= redLength && greenLength >= blueLength) {
+			return COMPONENT_GREEN;
+		} else {
+			return COMPONENT_BLUE;
+		}
+	}
+
+	private int volume(int lower, int upper) {
+		int minRed = QUANTIZE_WORD_MASK, minGreen = QUANTIZE_WORD_MASK, minBlue = QUANTIZE_WORD_MASK;
+		int maxRed = 0, maxGreen = 0, maxBlue = 0;
+
+		for (int i = lower; i <= upper; i++) {
+			final int color = mColors[i];
+			final int r = quantizedRed(color);
+			final int g = quantizedGreen(color);
+			final int b = quantizedBlue(color);
+
+			if (r < minRed) minRed = r;
+			if (r > maxRed) maxRed = r;
+			if (g < minGreen) minGreen = g;
+			if (g > maxGreen) maxGreen = g;
+			if (b < minBlue) minBlue = b;
+			if (b > maxBlue) maxBlue = b;
+		}
+
+		return (maxRed - minRed + 1) * (maxGreen - minGreen + 1) * (maxBlue - minBlue + 1);
+	}
+
+	/**
+	 * Swaps the given dimension with red, which occupies the most significant bits. Applying
+	 * it twice restores the original order.
+	 */
+	private void modifySignificantOctet(int dimension, int lower, int upper) {
+		final int[] colors = mColors;
+
+		switch (dimension) {
+			case COMPONENT_GREEN:
+				for (int i = lower; i <= upper; i++) {
+					final int color = colors[i];
+					colors[i] = quantizedGreen(color) << (QUANTIZE_WORD_WIDTH * 2)
+							| quantizedRed(color) << QUANTIZE_WORD_WIDTH
+							| quantizedBlue(color);
+				}
+				break;
+			case COMPONENT_BLUE:
+				for (int i = lower; i <= upper; i++) {
+					final int color = colors[i];
+					colors[i] = quantizedBlue(color) << (QUANTIZE_WORD_WIDTH * 2)
+							| quantizedGreen(color) << QUANTIZE_WORD_WIDTH
+							| quantizedRed(color);
+				}
+				break;
+			case COMPONENT_RED:
+			default:
+				// already sorted by red
+				break;
+		}
+	}
+
+	private Swatch averageColor(int lower, int upper) {
+		long redSum = 0;
+		long greenSum = 0;
+		long blueSum = 0;
+		int totalPopulation = 0;
+
+		for (int i = lower; i <= upper; i++) {
+			final int color = mColors[i];
+			final int population = mHistogram[color];
+
+			totalPopulation += population;
+			redSum += (long) population * quantizedRed(color);
+			greenSum += (long) population * quantizedGreen(color);
+			blueSum += (long) population * quantizedBlue(color);
+		}
+
+		final int r = Math.round(redSum / (float) totalPopulation);
+		final int g = Math.round(greenSum / (float) totalPopulation);
+		final int b = Math.round(blueSum / (float) totalPopulation);
+
+		return new Swatch(approximateToRgb888(r, g, b), totalPopulation);
+	}
+
+	/**
+	 * Ignores colors that are close to black or white, and those close to the red side of the
+	 * I line (skin tones), which rarely make for an interesting palette.
+	 */
+	private boolean shouldIgnoreColor(int rgb) {
+		final float[] hsl = mTempHsl;
+		ColorUtils.rgbToHsl(ColorUtils.red(rgb), ColorUtils.green(rgb), ColorUtils.blue(rgb), hsl);
+
+		final boolean isBlackOrWhite = hsl[2] <= BLACK_MAX_LIGHTNESS || hsl[2] >= WHITE_MIN_LIGHTNESS;
+		final boolean isNearRedILine = hsl[0] >= 10f && hsl[0] <= 37f && hsl[1] <= 0.82f;
+
+		return isBlackOrWhite || isNearRedILine;
+	}
+
+	private static int quantizedRed(int color) {
+		return (color >> (QUANTIZE_WORD_WIDTH * 2)) & QUANTIZE_WORD_MASK;
+	}
+
+	private static int quantizedGreen(int color) {
+		return (color >> QUANTIZE_WORD_WIDTH) & QUANTIZE_WORD_MASK;
+	}
+
+	private static int quantizedBlue(int color) {
+		return color & QUANTIZE_WORD_MASK;
+	}
+
+	private static int approximateToRgb888(int color) {
+		return approximateToRgb888(quantizedRed(color), quantizedGreen(color), quantizedBlue(color));
+	}
+
+	private static int approximateToRgb888(int r, int g, int b) {
+		return ColorUtils.rgb(modifyWordWidth(r), modifyWordWidth(g), modifyWordWidth(b));
+	}
+
+	/**
+	 * Expands a 5-bit component to 8 bits, replicating the high bits into the low bits.
+	 */
+	private static int modifyWordWidth(int value) {
+		return (value << (8 - QUANTIZE_WORD_WIDTH)) | (value >> (2 * QUANTIZE_WORD_WIDTH - 8));
+	}
+}
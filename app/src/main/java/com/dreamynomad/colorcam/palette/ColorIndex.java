@@ -0,0 +1,247 @@
+package com.dreamynomad.colorcam.palette;
+
+import java.util.Arrays;
+
+/**
+ * Finds the images whose palettes contain a color, by indexing every palette color in a uniform
+ * grid over CIE L*a*b*.
+ * <p/>
+ * Colors are stored in primitive arrays grouped by cell, with the offset of each cell in a
+ * separate array, so a search only measures the colors in the few cells that overlap the search
+ * radius. Each image is ranked by its closest color.
+ * <p/>
+ * The index is immutable once built. Searching reuses scratch arrays and is not thread-safe.
+ */
+public final class ColorIndex {
+
+	/**
+	 * Size of a cell in each dimension, roughly the difference that is clearly visible.
+	 */
+	private static final float CELL_SIZE = 8f;
+
+	private static final float A_B_MIN = -128f;
+
+	private static final int L_CELLS = (int) (100f / CELL_SIZE) + 1;
+	private static final int A_B_CELLS = (int) (-2 * A_B_MIN / CELL_SIZE) + 1;
+
+	private static final int CELL_COUNT = L_CELLS * A_B_CELLS * A_B_CELLS;
+
+	/**
+	 * Search distances are quantized to this fraction of a unit when ranking.
+	 */
+	private static final float DISTANCE_SCALE = 64f;
+
+	private final int mItemCount;
+
+	// colors, grouped by cell
+	private final float[] mL;
+	private final float[] mA;
+	private final float[] mB;
+	private final int[] mItems;
+
+	/**
+	 * Offset of the first color of each cell, followed by the total number of colors.
+	 */
+	private final int[] mCellStart;
+
+	// closest distance of each item in the current search, valid if its mark is current
+	private final float[] mBestDistance;
+	private final int[] mMarks;
+	private int mMark;
+	private int[] mMatches = new int[64];
+	private long[] mKeys = new long[64];
+
+	/**
+	 * @param palettes the palette of each item, or null for items that do not have one yet
+	 * @param count    number of items, from the start of the array
+	 */
+	public ColorIndex(PackedPalette[] palettes, int count) {
+		mItemCount = count;
+
+		int colorCount = 0;
+		for (int i = 0; i < count; i++) {
+			if (palettes[i] != null) {
+				colorCount += palettes[i].size();
+			}
+		}
+
+		final float[] l = new float[colorCount];
+		final float[] a = new float[colorCount];
+		final float[] b = new float[colorCount];
+		final int[] items = new int[colorCount];
+		final int[] cells = new int[colorCount];
+		final float[] lab = new float[3];
+
+		mCellStart = new int[CELL_COUNT + 1];
+
+		int color = 0;
+		for (int i = 0; i < count; i++) {
+			final PackedPalette palette = palettes[i];
+
+			if (palette == null) {
+				continue;
+			}
+
+			for (int j = 0; j < palette.size(); j++) {
+				ColorUtils.rgbToLab(palette.getRgb(j), lab);
+
+				l[color] = lab[0];
+				a[color] = lab[1];
+				b[color] = lab[2];
+				items[color] = i;
+				cells[color] = cell(lCell(lab[0]), abCell(lab[1]), abCell(lab[2]));
+
+				mCellStart[cells[color] + 1]++;
+				color++;
+			}
+		}
+
+		// counting sort by cell, which keeps items in order within a cell
+		for (int i = 0; i < CELL_COUNT; i++) {
+			mCellStart[i + 1] += mCellStart[i];
+		}
+
+		mL = new float[colorCount];
+		mA = new float[colorCount];
+		mB = new float[colorCount];
+		mItems = new int[colorCount];
+
+		final int[] next = Arrays.copyOf(mCellStart, CELL_COUNT);
+
+		for (int i = 0; i < colorCount; i++) {
+			final int target = next[cells[i]]++;
+
+			mL[target] = l[i];
+			mA[target] = a[i];
+			mB[target] = b[i];
+			mItems[target] = items[i];
+		}
+
+		mBestDistance = new float[count];
+		mMarks = new int[count];
+	}
+
+	/**
+	 * @return the number of items that the index was built from
+	 */
+	public int getItemCount() {
+		return mItemCount;
+	}
+
+	/**
+	 * @return the number of colors in the index
+	 */
+	public int getColorCount() {
+		return mItems.length;
+	}
+
+	/**
+	 * Finds the items with a palette color within a distance of a color.
+	 *
+	 * @param rgb         the color to search for, in RGB format
+	 * @param maxDistance the largest difference in L*a*b* to match
+	 * @return the matching items, closest first, with ties in item order
+	 */
+	public int[] search(int rgb, float maxDistance) {
+		final float[] lab = new float[3];
+		ColorUtils.rgbToLab(rgb, lab);
+
+		final float l = lab[0];
+		final float a = lab[1];
+		final float b = lab[2];
+		final float maxDistanceSquared = maxDistance * maxDistance;
+
+		final int lMin = lCell(l - maxDistance);
+		final int lMax = lCell(l + maxDistance);
+		final int aMin = abCell(a - maxDistance);
+		final int aMax = abCell(a + maxDistance);
+		final int bMin = abCell(b - maxDistance);
+		final int bMax = abCell(b + maxDistance);
+
+		if (++mMark == 0) {
+			// wrapped around, so old marks could look current
+			Arrays.fill(mMarks, 0);
+			mMark = 1;
+		}
+
+		int matchCount = 0;
+
+		for (int li = lMin; li <= lMax; li++) {
+			for (int ai = aMin; ai <= aMax; ai++) {
+				// colors of consecutive b cells are contiguous
+				final int start = mCellStart[cell(li, ai, bMin)];
+				final int end = mCellStart[cell(li, ai, bMax) + 1];
+
+				for (int i = start; i < end; i++) {
+					final float dl = mL[i] - l;
+					final float da = mA[i] - a;
+					final float db = mB[i] - b;
+					final float distanceSquared = dl * dl + da * da + db * db;
+
+					if (distanceSquared > maxDistanceSquared) {
+						continue;
+					}
+
+					final int item = mItems[i];
+
+					if (mMarks[item] != mMark) {
+						mMarks[item] = mMark;
+						mBestDistance[item] = distanceSquared;
+
+						if (matchCount == mMatches.length) {
+							mMatches = Arrays.copyOf(mMatches, matchCount * 2);
+						}
+						mMatches[matchCount++] = item;
+					} else if (distanceSquared < mBestDistance[item]) {
+						mBestDistance[item] = distanceSquared;
+					}
+				}
+			}
+		}
+
+		return rank(matchCount);
+	}
+
+	/**
+	 * Sorts the matches by distance, then by item, using packed keys.
+	 */
+	private int[] rank(int matchCount) {
+		if (mKeys.length < matchCount) {
+			mKeys = new long[mMatches.length];
+		}
+
+		for (int i = 0; i < matchCount; i++) {
+			final int item = mMatches[i];
+			final long distance =
+					(long) (Math.sqrt(mBestDistance[item]) * DISTANCE_SCALE);
+
+			mKeys[i] = (distance << 32) | item;
+		}
+
+		Arrays.sort(mKeys, 0, matchCount);
+
+		final int[] results = new int[matchCount];
+
+		for (int i = 0; i < matchCount; i++) {
+			results[i] = (int) mKeys[i];
+		}
+
+		return results;
+	}
+
+	private static int lCell(float l) {
+		return clamp((int) (l / CELL_SIZE), L_CELLS);
+	}
+
+	private static int abCell(float value) {
+		return clamp((int) Math.floor((value - A_B_MIN) / CELL_SIZE), A_B_CELLS);
+	}
+
+	private static int clamp(int cell, int cells) {
+		return cell < 0 ? 0 : (cell >= cells ? cells - 1 : cell);
+	}
+
+	private static int cell(int l, int a, int b) {
+		return (l * A_B_CELLS + a) * A_B_CELLS + b;
+	}
+}
@@ -0,0 +1,115 @@
+package com.dreamynomad.colorcam.palette;
+
+/**
+ * Color conversions that work on packed ARGB ints without any Android dependencies.
+ */
+public final class ColorUtils {
+
+	// D65 white point
+	private static final float XN = 0.95047f;
+	private static final float YN = 1f;
+	private static final float ZN = 1.08883f;
+
+	/**
+	 * Linear values of the 8-bit sRGB components.
+	 */
+	private static final float[] LINEAR = new float[256];
+
+	static {
+		for (int i = 0; i < LINEAR.length; i++) {
+			final double c = i / 255d;
+			LINEAR[i] = (float) (c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4));
+		}
+	}
+
+	private ColorUtils() {
+	}
+
+	public static int red(int color) {
+		return (color >> 16) & 0xFF;
+	}
+
+	public static int green(int color) {
+		return (color >> 8) & 0xFF;
+	}
+
+	public static int blue(int color) {
+		return color & 0xFF;
+	}
+
+	public static int rgb(int red, int green, int blue) {
+		return 0xFF000000 | (red << 16) | (green << 8) | blue;
+	}
+
+	/**
+	 * Converts RGB components to HSL.
+	 *
+	 * @param r   red component, between 0 and 255
+	 * @param g   green component, between 0 and 255
+	 * @param b   blue component, between 0 and 255
+	 * @param hsl array of size 3 which receives hue [0, 360), saturation [0, 1]
+	 *            and lightness [0, 1]
+	 */
+	public static void rgbToHsl(int r, int g, int b, float[] hsl) {
+		final float rf = r / 255f;
+		final float gf = g / 255f;
+		final float bf = b / 255f;
+
+		final float max = Math.max(rf, Math.max(gf, bf));
+		final float min = Math.min(rf, Math.min(gf, bf));
+		final float deltaMaxMin = max - min;
+
+		float h, s;
+		float l = (max + min) / 2f;
+
+		if (max == min) {
+			// Monochromatic
+			h = s = 0f;
+		} else {
+			if (max == rf) {
+				h = ((gf - bf) / deltaMaxMin) % 6f;
+			} else if (max == gf) {
+				h = ((bf - rf) / deltaMaxMin) + 2f;
+			} else {
+				h = ((rf - gf) / deltaMaxMin) + 4f;
+			}
+
+			s = deltaMaxMin / (1f - Math.abs(2f * l - 1f));
+		}
+
+		h = (h * 60f) % 360f;
+		if (h < 0) {
+			h += 360f;
+		}
+
+		hsl[0] = h;
+		hsl[1] = Math.max(0f, Math.min(1f, s));
+		hsl[2] = Math.max(0f, Math.min(1f, l));
+	}
+
+	/**
+	 * Converts a color to CIE L*a*b*, in which euclidean distance approximates perceived
+	 * difference.
+	 *
+	 * @param rgb a color in RGB format
+	 * @param lab array of size 3 which receives L* [0, 100], a* and b*
+	 */
+	public static void rgbToLab(int rgb, float[] lab) {
+		final float r = LINEAR[red(rgb)];
+		final float g = LINEAR[green(rgb)];
+		final float b = LINEAR[blue(rgb)];
+
+		final float fx = labF((0.4124f * r + 0.3576f * g + 0.1805f * b) / XN);
+		final float fy = labF((0.2126f * r + 0.7152f * g + 0.0722f * b) / YN);
+		final float fz = labF((0.0193f * r + 0.1192f * g + 0.9505f * b) / ZN);
+
+		lab[0] = 116f * fy - 16f;
+		lab[1] = 500f * (fx - fy);
+		lab[2] = 200f * (fy - fz);
+	}
+
+	private static float labF(float t) {
+		// linear near black, where the cube root is too steep
+		return t > 0.008856f ? (float) Math.cbrt(t) : 7.787f * t + 16f / 116f;
+	}
+}
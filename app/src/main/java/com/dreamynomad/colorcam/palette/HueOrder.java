@@ -0,0 +1,91 @@
+package com.dreamynomad.colorcam.palette;
+
+import java.util.Arrays;
+
+/**
+ * Orders images like a rainbow by the hue of the dominant color of their palettes.
+ * <p/>
+ * Each image gets a single {@code long} key holding its color and its position, so the whole
+ * library is ordered by one primitive sort. Images whose dominant color is nearly gray come
+ * after the colorful ones, from dark to light, and images without a palette come last, in their
+ * original order.
+ */
+public final class HueOrder {
+
+	/**
+	 * Colors with a lower saturation have no meaningful hue.
+	 */
+	private static final float GRAY_SATURATION = 0.1f;
+
+	private static final long GRAY = 1L << 61;
+	private static final long MISSING = 1L << 62;
+
+	/**
+	 * Bits of the color key that fit above the position.
+	 */
+	private static final int COLOR_BITS = 29;
+
+	private HueOrder() {
+	}
+
+	/**
+	 * @param palettes the palette of each image, or null for images that do not have one
+	 * @param count    number of images, from the start of the array
+	 * @return the positions of the images in hue order
+	 */
+	public static int[] sort(PackedPalette[] palettes, int count) {
+		final long[] keys = new long[count];
+		final float[] hsl = new float[3];
+
+		for (int i = 0; i < count; i++) {
+			keys[i] = sortKey(palettes[i], hsl) | i;
+		}
+
+		Arrays.sort(keys);
+
+		final int[] order = new int[count];
+
+		for (int i = 0; i < count; i++) {
+			order[i] = (int) keys[i];
+		}
+
+		return order;
+	}
+
+	/**
+	 * @return the color of the palette that represents the most pixels, or 0 if it is empty
+	 */
+	public static int dominantColor(PackedPalette palette) {
+		int color = 0;
+		int population = -1;
+
+		for (int i = 0; i < palette.size(); i++) {
+			if (palette.getPopulation(i) > population) {
+				population = palette.getPopulation(i);
+				color = palette.getRgb(i);
+			}
+		}
+
+		return color;
+	}
+
+	/**
+	 * @return a key with the low 32 bits left clear for the position
+	 */
+	private static long sortKey(PackedPalette palette, float[] hsl) {
+		if (palette == null || palette.size() == 0) {
+			return MISSING;
+		}
+
+		// hue, then saturation and lightness, in the top 47 bits
+		final long key = PaletteOrder.sortKey(dominantColor(palette), hsl) >>> 16;
+
+		if (hsl[1] < GRAY_SATURATION) {
+			// lightness only
+			return GRAY | ((key & 0xFFFF) << 32);
+		}
+
+		// hue and saturation
+		return (key >>> (47 - COLOR_BITS)) << 32;
+	}
+}
@@ -0,0 +1,84 @@
+package com.dreamynomad.colorcam.palette;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact, immutable palette: the colors followed by their populations, in a single
+ * {@code int[]}.
+ */
+public final class PackedPalette {
+
+	private final int[] mData;
+
+	/**
+	 * @param colors      colors in RGB format
+	 * @param populations the number of pixels represented by each color
+	 * @param count       the number of colors to use from the arrays
+	 */
+	public PackedPalette(int[] colors, int[] populations, int count) {
+		mData = new int[count * 2];
+		System.arraycopy(colors, 0, mData, 0, count);
+		System.arraycopy(populations, 0, mData, count, count);
+	}
+
+	private PackedPalette(int[] data) {
+		mData = data;
+	}
+
+	/**
+	 * @param swatches the swatches, in the order that they should be displayed
+	 * @return the packed palette
+	 */
+	public static PackedPalette fromSwatches(List<Swatch> swatches) {
+		final int count = swatches.size();
+		final int[] data = new int[count * 2];
+
+		for (int i = 0; i < count; i++) {
+			final Swatch swatch = swatches.get(i);
+			data[i] = swatch.getRgb();
+			data[count + i] = swatch.getPopulation();
+		}
+
+		return new PackedPalette(data);
+	}
+
+	/**
+	 * @return the number of colors
+	 */
+	public int size() {
+		return mData.length / 2;
+	}
+
+	/**
+	 * @return the color at the index in RGB format
+	 */
+	public int getRgb(int index) {
+		return mData[index];
+	}
+
+	/**
+	 * @return the number of pixels represented by the color at the index
+	 */
+	public int getPopulation(int index) {
+		return mData[size() + index];
+	}
+
+	/**
+	 * @return a copy of the colors, in RGB format
+	 */
+	public int[] getColors() {
+		return Arrays.copyOf(mData, size());
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return this == o || (o instanceof PackedPalette &&
+				Arrays.equals(mData, ((PackedPalette) o).mData));
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(mData);
+	}
+}
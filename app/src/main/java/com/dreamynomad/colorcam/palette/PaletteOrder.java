@@ -0,0 +1,154 @@
+package com.dreamynomad.colorcam.palette;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Orders palettes by hue, then saturation, then lightness.
+ * <p/>
+ * Each color is converted to HSL once and packed into a sortable {@code long}, together with its
+ * index so that equal colors keep their order, and the keys are sorted as primitives. This is
+ * the order of {@link SwatchComparator}, except that hues within about 0.01 degrees, which only
+ * differ by float rounding, are treated as equal.
+ * <p/>
+ * An instance keeps its scratch arrays between calls and is not thread-safe; the static methods
+ * use a per-thread instance.
+ */
+public final class PaletteOrder {
+
+	private static final int HUE_BITS = 15;
+	private static final int SATURATION_BITS = 16;
+	private static final int LIGHTNESS_BITS = 16;
+	private static final int INDEX_BITS = 16;
+
+	private static final int HUE_MAX = (1 << HUE_BITS) - 1;
+	private static final int SATURATION_MAX = (1 << SATURATION_BITS) - 1;
+	private static final int LIGHTNESS_MAX = (1 << LIGHTNESS_BITS) - 1;
+	private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+
+	/**
+	 * Maximum number of colors in a palette that can be sorted.
+	 */
+	public static final int MAX_COLORS = 1 << INDEX_BITS;
+
+	private static final ThreadLocal<PaletteOrder> sInstances = new ThreadLocal<PaletteOrder>() {
+		@Override
+		protected PaletteOrder initialValue() {
+			return new PaletteOrder();
+		}
+	};
+
+	private final float[] mTempHsl = new float[3];
+	private long[] mKeys = new long[16];
+
+	/**
+	 * @param swatches the swatches, in any order
+	 * @return the palette of the swatches, sorted by HSL
+	 */
+	public static PackedPalette sort(List<Swatch> swatches) {
+		return sInstances.get().sortSwatches(swatches);
+	}
+
+	/**
+	 * Sorts colors and their populations in place.
+	 *
+	 * @param colors      colors in RGB format
+	 * @param populations the number of pixels represented by each color, or null
+	 * @param count       the number of colors to sort from the start of the arrays
+	 */
+	public static void sort(int[] colors, int[] populations, int count) {
+		sInstances.get().sortColors(colors, populations, count);
+	}
+
+	/**
+	 * @param rgb a color in RGB format
+	 * @param hsl scratch array of size 3
+	 * @return a key that sorts by hue, then saturation, then lightness, with the low
+	 * 16 bits left clear for an index
+	 */
+	public static long sortKey(int rgb, float[] hsl) {
+		ColorUtils.rgbToHsl(ColorUtils.red(rgb), ColorUtils.green(rgb), ColorUtils.blue(rgb), hsl);
+
+		final long hue = Math.min(HUE_MAX, (int) (hsl[0] / 360f * (HUE_MAX + 1)));
+		final long saturation = Math.round(hsl[1] * SATURATION_MAX);
+		final long lightness = Math.round(hsl[2] * LIGHTNESS_MAX);
+
+		return (hue << (SATURATION_BITS + LIGHTNESS_BITS + INDEX_BITS)) |
+				(saturation << (LIGHTNESS_BITS + INDEX_BITS)) |
+				(lightness << INDEX_BITS);
+	}
+
+	private PackedPalette sortSwatches(List<Swatch> swatches) {
+		final int count = swatches.size();
+		final long[] keys = sortKeys(count);
+
+		for (int i = 0; i < count; i++) {
+			keys[i] = sortKey(swatches.get(i).getRgb(), mTempHsl) | i;
+		}
+
+		Arrays.sort(keys, 0, count);
+
+		final int[] colors = new int[count];
+		final int[] populations = new int[count];
+
+		for (int i = 0; i < count; i++) {
+			final Swatch swatch = swatches.get((int) (keys[i] & INDEX_MASK));
+			colors[i] = swatch.getRgb();
+			populations[i] = swatch.getPopulation();
+		}
+
+		return new PackedPalette(colors, populations, count);
+	}
+
+	private void sortColors(int[] colors, int[] populations, int count) {
+		final long[] keys = sortKeys(count);
+
+		for (int i = 0; i < count; i++) {
+			keys[i] = sortKey(colors[i], mTempHsl) | i;
+		}
+
+		Arrays.sort(keys, 0, count);
+
+		// apply the permutation by following its cycles, marking finished entries as negative
+		for (int i = 0; i < count; i++) {
+			if (keys[i] < 0) {
+				continue;
+			}
+
+			final int color = colors[i];
+			final int population = populations != null ? populations[i] : 0;
+			int target = i;
+
+			while (true) {
+				final int source = (int) (keys[target] & INDEX_MASK);
+				keys[target] |= Long.MIN_VALUE;
+
+				if (source == i) {
+					colors[target] = color;
+					if (populations != null) {
+						populations[target] = population;
+					}
+					break;
+				}
+
+				colors[target] = colors[source];
+				if (populations != null) {
+					populations[target] = populations[source];
+				}
+				target = source;
+			}
+		}
+	}
+
+	private long[] sortKeys(int count) {
+		if (count > MAX_COLORS) {
+			throw new IllegalArgumentException("Too many colors: " + count);
+		}
+
+		if (mKeys.length < count) {
+			mKeys = new long[count];
+		}
+
+		return mKeys;
+	}
+}
@@ -0,0 +1,49 @@
+package com.dreamynomad.colorcam.palette;
+
+/**
+ * A color from the palette and the number of pixels it represents.
+ */
+public final class Swatch {
+
+	private final int mRgb;
+	private final int mPopulation;
+
+	private float[] mHsl;
+
+	public Swatch(int rgb, int population) {
+		mRgb = rgb;
+		mPopulation = population;
+	}
+
+	/**
+	 * @return the color in RGB format, with full alpha
+	 */
+	public int getRgb() {
+		return mRgb;
+	}
+
+	/**
+	 * @return the number of pixels represented by this swatch
+	 */
+	public int getPopulation() {
+		return mPopulation;
+	}
+
+	/**
+	 * @return the color in HSL format, lazily computed and cached
+	 */
+	public float[] getHsl() {
+		if (mHsl == null) {
+			mHsl = new float[3];
+			ColorUtils.rgbToHsl(ColorUtils.red(mRgb), ColorUtils.green(mRgb),
+					ColorUtils.blue(mRgb), mHsl);
+		}
+
+		return mHsl;
+	}
+
+	@Override
+	public String toString() {
+		return "Swatch{rgb=#" + Integer.toHexString(mRgb) + ", population=" + mPopulation + "}";
+	}
+}
@@ -0,0 +1,27 @@
+package com.dreamynomad.colorcam.palette;
+
+import java.util.Comparator;
+
+/**
+ * Sorts swatches by hue, then saturation, then lightness.
+ */
+public class SwatchComparator implements Comparator<Swatch> {
+
+	@Override
+	public int compare(Swatch hsl1, Swatch hsl2) {
+		int hue = (int) Math.signum(hsl1.getHsl()[0] - hsl2.getHsl()[0]);
+
+		if (hue != 0) {
+			return hue;
+		} else {
+			int saturation = (int) Math.signum(hsl1.getHsl()[1] - hsl2.getHsl()[1]);
+
+			if (saturation != 0) {
+				return saturation;
+			} else {
+				// try luminance
+				return (int) Math.signum(hsl1.getHsl()[2] - hsl2.getHsl()[2]);
+			}
+		}
+	}
+}
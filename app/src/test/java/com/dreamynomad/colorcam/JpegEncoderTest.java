@@ -0,0 +1,116 @@
+package com.dreamynomad.colorcam;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class JpegEncoderTest {
+
+	@Test
+	public void oddSizesAreKept() throws IOException {
+		final int[] pixels = gradient(37, 23);
+		final BufferedImage image = decode(encode(pixels, 37, 23, 23));
+
+		assertEquals(37, image.getWidth());
+		assertEquals(23, image.getHeight());
+		assertClose(pixels, image, 8);
+	}
+
+	@Test
+	public void stripsMatchASingleWrite() throws IOException {
+		final int width = 50;
+		final int height = 70;
+		final int[] pixels = gradient(width, height);
+
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		final JpegEncoder encoder = new JpegEncoder(outputStream, width, height, 90);
+		for (int top = 0; top < height; top += JpegEncoder.BLOCK_ROWS * 2) {
+			final int rows = Math.min(JpegEncoder.BLOCK_ROWS * 2, height - top);
+			encoder.write(Arrays.copyOfRange(pixels, top * width, (top + rows) * width), rows);
+		}
+		encoder.finish();
+
+		assertTrue(Arrays.equals(encode(pixels, width, height, height), outputStream.toByteArray()));
+		assertClose(pixels, decode(outputStream.toByteArray()), 8);
+	}
+
+	@Test
+	public void flatColorsSurvive() throws IOException {
+		final int[] pixels = new int[32 * 32];
+		Arrays.fill(pixels, 0, pixels.length / 2, 0xFFC03020);
+		Arrays.fill(pixels, pixels.length / 2, pixels.length, 0xFF2060E0);
+
+		assertClose(pixels, decode(encode(pixels, 32, 32, 32)), 4);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void partialBlockRowsMustBeLast() throws IOException {
+		new JpegEncoder(new ByteArrayOutputStream(), 8, 40, 90).write(new int[8 * 20], 20);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void finishNeedsEveryRow() throws IOException {
+		final JpegEncoder encoder = new JpegEncoder(new ByteArrayOutputStream(), 8, 40, 90);
+		encoder.write(new int[8 * 16], 16);
+		encoder.finish();
+	}
+
+	private static byte[] encode(int[] pixels, int width, int height, int rows)
+			throws IOException {
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		final JpegEncoder encoder = new JpegEncoder(outputStream, width, height, 90);
+		for (int top = 0; top < height; top += rows) {
+			final int count = Math.min(rows, height - top);
+			encoder.write(Arrays.copyOfRange(pixels, top * width, (top + count) * width), count);
+		}
+		encoder.finish();
+		return outputStream.toByteArray();
+	}
+
+	private static BufferedImage decode(byte[] jpeg) throws IOException {
+		final BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+		assertNotNull(image);
+		return image;
+	}
+
+	private static int[] gradient(int width, int height) {
+		final int[] pixels = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				pixels[y * width + x] = 0xFF000000 | (x * 255 / width) << 16 |
+						(y * 255 / height) << 8 | 128;
+			}
+		}
+		return pixels;
+	}
+
+	/**
+	 * Checks that the average difference of each component is within the tolerance.
+	 */
+	private static void assertClose(int[] pixels, BufferedImage image, int tolerance) {
+		final int width = image.getWidth();
+		long error = 0;
+
+		for (int i = 0; i < pixels.length; i++) {
+			final int expected = pixels[i];
+			final int actual = image.getRGB(i % width, i / width);
+
+			for (int shift = 0; shift <= 16; shift += 8) {
+				error += Math.abs(((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF));
+			}
+		}
+
+		final long average = error / (pixels.length * 3L);
+		assertTrue("average error " + average, average <= tolerance);
+	}
+}
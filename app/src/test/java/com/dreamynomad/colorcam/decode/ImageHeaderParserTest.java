@@ -0,0 +1,186 @@
+package com.dreamynomad.colorcam.decode;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ImageHeaderParserTest {
+
+	@Test
+	public void jpegSizeIsReadFromTheStartOfFrame() {
+		final byte[] jpeg = jpeg(0xC0, 1234, 567);
+
+		assertSize(jpeg, 1234, 567);
+	}
+
+	@Test
+	public void progressiveJpegSizeIsRead() {
+		assertSize(jpeg(0xC2, 40, 3000), 40, 3000);
+	}
+
+	@Test
+	public void jpegNeedsTheWholeStartOfFrame() {
+		final byte[] jpeg = jpeg(0xC0, 1234, 567);
+		final int[] size = new int[2];
+
+		// the last byte of the width is missing
+		assertFalse(ImageHeaderParser.getSize(jpeg, jpeg.length - 1, size));
+		assertFalse(ImageHeaderParser.getSize(jpeg, 20, size));
+	}
+
+	@Test
+	public void jpegWithoutStartOfFrameBeforeScanIsUnknown() {
+		final byte[] jpeg = bytes(0xFF, 0xD8, 0xFF, 0xDA, 0x00, 0x08, 1, 2, 3, 4, 5, 6,
+				0xFF, 0xC0, 0x00, 0x11, 0x08, 0x00, 0x10, 0x00, 0x10, 3);
+
+		assertFalse(ImageHeaderParser.getSize(jpeg, jpeg.length, new int[2]));
+	}
+
+	@Test
+	public void encodedJpegSizeIsRead() throws IOException {
+		assertSize(encode("jpeg", 37, 23), 37, 23);
+	}
+
+	@Test
+	public void pngSizeIsReadFromTheHeaderChunk() throws IOException {
+		assertSize(bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 13,
+				'I', 'H', 'D', 'R', 0, 0, 0x01, 0x00, 0, 1, 0x00, 0x02), 256, 65538);
+		assertSize(encode("png", 301, 7), 301, 7);
+	}
+
+	@Test
+	public void pngNeedsItsSignature() {
+		final byte[] png = bytes(0x89, 'P', 'N', 'X', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 13,
+				'I', 'H', 'D', 'R', 0, 0, 0, 8, 0, 0, 0, 8);
+
+		assertFalse(ImageHeaderParser.getSize(png, png.length, new int[2]));
+	}
+
+	@Test
+	public void lossyWebpSizeIsRead() {
+		// frame tag, start code, then 14-bit dimensions with the scale bits set
+		final byte[] webp = webp("VP8 ", 0x10, 0x02, 0x00, 0x9D, 0x01, 0x2A,
+				0x80, 0xC7, 0xE0, 0x41);
+
+		assertSize(webp, 1920, 480);
+	}
+
+	@Test
+	public void losslessWebpSizeIsRead() {
+		// 14 bits each of width - 1 and height - 1, after the signature
+		final int bits = (640 - 1) | ((480 - 1) << 14);
+		final byte[] webp = webp("VP8L", 0x2F, bits & 0xFF, (bits >> 8) & 0xFF,
+				(bits >> 16) & 0xFF, (bits >> 24) & 0xFF);
+
+		assertSize(webp, 640, 480);
+	}
+
+	@Test
+	public void extendedWebpSizeIsRead() {
+		// flags and reserved bytes, then 24 bits each of width - 1 and height - 1
+		final byte[] webp = webp("VP8X", 0x10, 0, 0, 0, 0x3F, 0x1F, 0x00, 0xFF, 0x0F, 0x01);
+
+		assertSize(webp, 0x1F40, 0x010FFF + 1);
+	}
+
+	@Test
+	public void truncatedWebpIsUnknown() {
+		final byte[] webp = webp("VP8X", 0x10, 0, 0, 0, 0x3F, 0x1F, 0x00, 0xFF, 0x0F, 0x01);
+
+		assertFalse(ImageHeaderParser.getSize(webp, webp.length - 1, new int[2]));
+	}
+
+	@Test
+	public void otherFormatsAreUnknown() {
+		final byte[] gif = bytes('G', 'I', 'F', '8', '9', 'a', 10, 0, 10, 0);
+
+		assertFalse(ImageHeaderParser.getSize(gif, gif.length, new int[2]));
+		assertFalse(ImageHeaderParser.getSize(gif, 1, new int[2]));
+	}
+
+	/**
+	 * @return the start of a JPEG with the segments that usually come before the frame
+	 */
+	private static byte[] jpeg(int startOfFrame, int width, int height) {
+		return bytes(0xFF, 0xD8,
+				// JFIF
+				0xFF, 0xE0, 0x00, 0x10, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0,
+				// EXIF, with a length that does not fit in a byte
+				0xFF, 0xE1, 0x01, 0x02, 'E', 'x', 'i', 'f', 0, 0, filler(0x100 - 6),
+				// a fill byte, then a quantization and a Huffman table
+				0xFF, 0xFF, 0xDB, 0x00, 0x04, 0, 0,
+				0xFF, 0xC4, 0x00, 0x03, 0,
+				0xFF, startOfFrame, 0x00, 0x11, 0x08, height >> 8, height & 0xFF,
+				width >> 8, width & 0xFF);
+	}
+
+	/**
+	 * @return a RIFF header and the start of the first chunk, followed by the bytes
+	 */
+	private static byte[] webp(String chunk, int... data) {
+		final byte[] webp = new byte[20 + data.length];
+		put(webp, 0, "RIFF");
+		put(webp, 8, "WEBP");
+		put(webp, 12, chunk);
+
+		for (int i = 0; i < data.length; i++) {
+			webp[20 + i] = (byte) data[i];
+		}
+
+		return webp;
+	}
+
+	private static void put(byte[] data, int offset, String tag) {
+		for (int i = 0; i < tag.length(); i++) {
+			data[offset + i] = (byte) tag.charAt(i);
+		}
+	}
+
+	private static int[] filler(int length) {
+		return new int[length];
+	}
+
+	/**
+	 * @param values bytes, or arrays of bytes that are spliced in
+	 */
+	private static byte[] bytes(Object... values) {
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		for (Object value : values) {
+			if (value instanceof int[]) {
+				for (int b : (int[]) value) {
+					outputStream.write(b);
+				}
+			} else if (value instanceof Character) {
+				outputStream.write((Character) value);
+			} else {
+				outputStream.write((Integer) value);
+			}
+		}
+
+		return outputStream.toByteArray();
+	}
+
+	private static byte[] encode(String format, int width, int height) throws IOException {
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		assertTrue(ImageIO.write(image, format, outputStream));
+		return outputStream.toByteArray();
+	}
+
+	private static void assertSize(byte[] data, int width, int height) {
+		final int[] size = new int[2];
+
+		assertTrue(ImageHeaderParser.getSize(data, data.length, size));
+		assertArrayEquals(new int[]{width, height}, size);
+	}
+}
@@ -0,0 +1,51 @@
+package com.dreamynomad.colorcam.decode;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SampleSizeTest {
+
+	private static final int MAX_SIZE = 4096;
+
+	@Test
+	public void smallImagesAreNotSampled() {
+		assertEquals(1, SampleSize.calculate(800, 600, 1000, 1000, MAX_SIZE));
+		assertEquals(1, SampleSize.calculate(1000, 1000, 1000, 1000, MAX_SIZE));
+	}
+
+	@Test
+	public void sampledImagesStayLargerThanRequested() {
+		assertEquals(2, SampleSize.calculate(4000, 3000, 1000, 1000, MAX_SIZE));
+		assertEquals(4, SampleSize.calculate(8000, 6000, 1000, 1000, MAX_SIZE));
+
+		// halving would make it exactly the requested size, which is not larger
+		assertEquals(1, SampleSize.calculate(2000, 2000, 1000, 1000, MAX_SIZE));
+	}
+
+	@Test
+	public void bothSidesMustStayLargerThanRequested() {
+		// the height is already close to the request
+		assertEquals(1, SampleSize.calculate(4000, 1100, 500, 1000, MAX_SIZE));
+	}
+
+	@Test
+	public void imagesAreSampledToFitTheMaximumSize() {
+		// a panorama that is far wider than it is tall
+		assertEquals(4, SampleSize.calculate(8000, 100, 100, 100, 2048));
+		assertEquals(2, SampleSize.calculate(100, 5000, 100, 100, 4096));
+	}
+
+	@Test
+	public void sampleSizesArePowersOfTwo() {
+		for (int width = 1; width < 20000; width += 997) {
+			for (int height = 1; height < 20000; height += 1009) {
+				final int sampleSize = SampleSize.calculate(width, height, 300, 300, MAX_SIZE);
+
+				assertTrue(sampleSize > 0 && (sampleSize & (sampleSize - 1)) == 0);
+				assertTrue(width / sampleSize <= MAX_SIZE && height / sampleSize <= MAX_SIZE);
+			}
+		}
+	}
+}
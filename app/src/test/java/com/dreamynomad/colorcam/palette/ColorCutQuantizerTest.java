@@ -0,0 +1,117 @@
+package com.dreamynomad.colorcam.palette;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ColorCutQuantizerTest {
+
+	private static final int RED = ColorUtils.rgb(255, 0, 0);
+	private static final int GREEN = ColorUtils.rgb(0, 255, 0);
+	private static final int BLUE = ColorUtils.rgb(0, 0, 255);
+	private static final int BLACK = ColorUtils.rgb(0, 0, 0);
+	private static final int WHITE = ColorUtils.rgb(255, 255, 255);
+
+	@Test
+	public void fewColorsAreUsedDirectly() {
+		final int[] pixels = image(RED, 100, GREEN, 25, BLUE, 50);
+		final List<Swatch> swatches = new ColorCutQuantizer().quantize(pixels, pixels.length, 16);
+
+		assertEquals(3, swatches.size());
+		assertEquals(100, population(swatches, RED));
+		assertEquals(25, population(swatches, GREEN));
+		assertEquals(50, population(swatches, BLUE));
+	}
+
+	@Test
+	public void blackAndWhiteAreIgnored() {
+		final int[] pixels = image(BLACK, 500, WHITE, 500, BLUE, 10);
+		final List<Swatch> swatches = new ColorCutQuantizer().quantize(pixels, pixels.length, 16);
+
+		assertEquals(1, swatches.size());
+		assertEquals(BLUE, swatches.get(0).getRgb());
+		assertEquals(10, swatches.get(0).getPopulation());
+	}
+
+	@Test
+	public void onlyTheGivenLengthIsRead() {
+		final int[] pixels = image(RED, 10, BLUE, 10);
+		final List<Swatch> swatches = new ColorCutQuantizer().quantize(pixels, 10, 16);
+
+		assertEquals(1, swatches.size());
+		assertEquals(RED, swatches.get(0).getRgb());
+		assertEquals(10, swatches.get(0).getPopulation());
+	}
+
+	@Test
+	public void clustersAreSplitAtTheMedian() {
+		// two shades of red and two shades of blue, 5-bit components 31 and 29
+		final int[] pixels = image(RED, 10, ColorUtils.rgb(239, 0, 0), 10,
+				BLUE, 10, ColorUtils.rgb(0, 0, 239), 10);
+		final List<Swatch> swatches = new ColorCutQuantizer().quantize(pixels, pixels.length, 2);
+
+		assertEquals(2, swatches.size());
+		// the shades average to 5-bit component 30
+		assertEquals(20, population(swatches, ColorUtils.rgb(247, 0, 0)));
+		assertEquals(20, population(swatches, ColorUtils.rgb(0, 0, 247)));
+	}
+
+	@Test
+	public void populationsAddUpToTheImage() {
+		final int[] pixels = new int[64 * 64];
+		for (int i = 0; i < pixels.length; i++) {
+			// a gradient from blue to green, with no ignored colors
+			final int x = i % 64;
+			pixels[i] = ColorUtils.rgb(0, 64 + x * 2, 255 - x * 2);
+		}
+
+		final List<Swatch> swatches = new ColorCutQuantizer().quantize(pixels, pixels.length, 8);
+
+		assertEquals(8, swatches.size());
+		int total = 0;
+		for (Swatch swatch : swatches) {
+			assertTrue(swatch.getPopulation() > 0);
+			total += swatch.getPopulation();
+		}
+		assertEquals(pixels.length, total);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void maxColorsMustBePositive() {
+		new ColorCutQuantizer().quantize(new int[]{RED}, 1, 0);
+	}
+
+	/**
+	 * @param colorsAndCounts pairs of a color and its number of pixels
+	 */
+	private static int[] image(int... colorsAndCounts) {
+		int length = 0;
+		for (int i = 1; i < colorsAndCounts.length; i += 2) {
+			length += colorsAndCounts[i];
+		}
+
+		final int[] pixels = new int[length];
+		int offset = 0;
+		for (int i = 0; i < colorsAndCounts.length; i += 2) {
+			Arrays.fill(pixels, offset, offset + colorsAndCounts[i + 1], colorsAndCounts[i]);
+			offset += colorsAndCounts[i + 1];
+		}
+		return pixels;
+	}
+
+	/**
+	 * @return the population of the swatch with the color, or -1 if there is none
+	 */
+	private static int population(List<Swatch> swatches, int rgb) {
+		for (Swatch swatch : swatches) {
+			if (swatch.getRgb() == rgb) {
+				return swatch.getPopulation();
+			}
+		}
+		return -1;
+	}
+}
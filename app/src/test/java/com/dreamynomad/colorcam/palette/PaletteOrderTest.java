@@ -0,0 +1,107 @@
+package com.dreamynomad.colorcam.palette;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PaletteOrderTest {
+
+	// hue 0, then 120, then 240
+	private static final int RED = ColorUtils.rgb(255, 0, 0);
+	private static final int GREEN = ColorUtils.rgb(0, 255, 0);
+	private static final int BLUE = ColorUtils.rgb(0, 0, 255);
+
+	// hue 0 with a lower saturation
+	private static final int DULL_RED = ColorUtils.rgb(191, 64, 64);
+
+	// hue and saturation 0, differing only in lightness
+	private static final int DARK_GRAY = ColorUtils.rgb(64, 64, 64);
+	private static final int LIGHT_GRAY = ColorUtils.rgb(192, 192, 192);
+
+	@Test
+	public void comparatorOrdersByHueThenSaturationThenLightness() {
+		final List<Swatch> swatches = swatches(BLUE, LIGHT_GRAY, GREEN, RED, DULL_RED, DARK_GRAY);
+		Collections.sort(swatches, new SwatchComparator());
+
+		assertArrayEquals(new int[]{DARK_GRAY, LIGHT_GRAY, DULL_RED, RED, GREEN, BLUE},
+				colors(swatches));
+	}
+
+	@Test
+	public void sortMatchesComparator() {
+		final List<Swatch> swatches = swatches(BLUE, LIGHT_GRAY, GREEN, RED, DULL_RED, DARK_GRAY,
+				ColorUtils.rgb(12, 200, 180), ColorUtils.rgb(90, 20, 160),
+				ColorUtils.rgb(240, 220, 10));
+		final PackedPalette palette = PaletteOrder.sort(swatches);
+
+		final List<Swatch> expected = new ArrayList<>(swatches);
+		Collections.sort(expected, new SwatchComparator());
+
+		assertEquals(expected.size(), palette.size());
+		for (int i = 0; i < palette.size(); i++) {
+			assertEquals(expected.get(i).getRgb(), palette.getRgb(i));
+			assertEquals(expected.get(i).getPopulation(), palette.getPopulation(i));
+		}
+	}
+
+	@Test
+	public void sortInPlaceMovesPopulationsWithColors() {
+		final int[] colors = {BLUE, RED, GREEN, DULL_RED, 0};
+		final int[] populations = {3, 1, 2, 4, 99};
+
+		PaletteOrder.sort(colors, populations, 4);
+
+		assertArrayEquals(new int[]{DULL_RED, RED, GREEN, BLUE, 0}, colors);
+		assertArrayEquals(new int[]{4, 1, 2, 3, 99}, populations);
+	}
+
+	@Test
+	public void equalColorsKeepTheirOrder() {
+		final List<Swatch> swatches = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			swatches.add(new Swatch(GREEN, i));
+		}
+
+		final PackedPalette palette = PaletteOrder.sort(swatches);
+
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i, palette.getPopulation(i));
+		}
+	}
+
+	@Test
+	public void sortKeysIncreaseWithHue() {
+		final float[] hsl = new float[3];
+		final long red = PaletteOrder.sortKey(RED, hsl);
+		final long green = PaletteOrder.sortKey(GREEN, hsl);
+		final long blue = PaletteOrder.sortKey(BLUE, hsl);
+
+		assertTrue(red < green);
+		assertTrue(green < blue);
+	}
+
+	/**
+	 * @return swatches with populations counting up from 1, so that they can be told apart
+	 */
+	private static List<Swatch> swatches(int... colors) {
+		final List<Swatch> swatches = new ArrayList<>(colors.length);
+		for (int i = 0; i < colors.length; i++) {
+			swatches.add(new Swatch(colors[i], i + 1));
+		}
+		return swatches;
+	}
+
+	private static int[] colors(List<Swatch> swatches) {
+		final int[] colors = new int[swatches.size()];
+		for (int i = 0; i < colors.length; i++) {
+			colors[i] = swatches.get(i).getRgb();
+		}
+		return colors;
+	}
+}
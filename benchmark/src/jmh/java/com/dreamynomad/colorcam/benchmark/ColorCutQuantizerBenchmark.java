@@ -0,0 +1,73 @@
+package com.dreamynomad.colorcam.benchmark;
+
+import com.dreamynomad.colorcam.palette.ColorCutQuantizer;
+import com.dreamynomad.colorcam.palette.Swatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Palette quantization over synthetic pixel buffers the size of a scaled thumbnail.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColorCutQuantizerBenchmark {
+
+	private static final int WIDTH = 133;
+	private static final int HEIGHT = 100;
+
+	/**
+	 * noise has the most distinct colors, gradient is smooth like a sky, and blocks has a few
+	 * flat regions with some noise like a simple photo.
+	 */
+	@Param({"noise", "gradient", "blocks"})
+	public String mPattern;
+
+	@Param({"6", "16"})
+	public int mMaxColors;
+
+	private int[] mPixels;
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+		mPixels = new int[WIDTH * HEIGHT];
+
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				final int rgb;
+
+				switch (mPattern) {
+					case "noise":
+						rgb = random.nextInt(0x1000000);
+						break;
+					case "gradient":
+						rgb = ((x * 255 / WIDTH) << 16) | ((y * 255 / HEIGHT) << 8) | 0x80;
+						break;
+					default:
+						final int block = (x / 32 + y / 25 * 5) * 0x3B1F47;
+						rgb = (block + random.nextInt(0x080808)) & 0xFFFFFF;
+						break;
+				}
+
+				mPixels[y * WIDTH + x] = 0xFF000000 | rgb;
+			}
+		}
+	}
+
+	@Benchmark
+	public List<Swatch> generate() {
+		return ColorCutQuantizer.generate(mPixels, mPixels.length, mMaxColors);
+	}
+}
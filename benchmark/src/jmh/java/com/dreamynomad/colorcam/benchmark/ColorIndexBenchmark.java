@@ -0,0 +1,71 @@
+package com.dreamynomad.colorcam.benchmark;
+
+import com.dreamynomad.colorcam.palette.ColorIndex;
+import com.dreamynomad.colorcam.palette.PackedPalette;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the color index of a library of six-color palettes, and searching it for random
+ * colors with the radius used by the gallery.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColorIndexBenchmark {
+
+	private static final int QUERIES = 64;
+
+	@Param({"5000", "50000"})
+	public int mImageCount;
+
+	private PackedPalette[] mPalettes;
+	private ColorIndex mIndex;
+	private final int[] mQueries = new int[QUERIES];
+	private int mQuery;
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+
+		mPalettes = new PackedPalette[mImageCount];
+
+		final int[] colors = new int[6];
+		final int[] populations = new int[6];
+
+		for (int i = 0; i < mImageCount; i++) {
+			for (int j = 0; j < colors.length; j++) {
+				colors[j] = 0xFF000000 | random.nextInt(0x1000000);
+				populations[j] = random.nextInt(10000);
+			}
+			mPalettes[i] = new PackedPalette(colors, populations, colors.length);
+		}
+
+		for (int i = 0; i < QUERIES; i++) {
+			mQueries[i] = 0xFF000000 | random.nextInt(0x1000000);
+		}
+
+		mIndex = new ColorIndex(mPalettes, mImageCount);
+	}
+
+	@Benchmark
+	public ColorIndex build() {
+		return new ColorIndex(mPalettes, mImageCount);
+	}
+
+	@Benchmark
+	public int[] search() {
+		mQuery = (mQuery + 1) % QUERIES;
+		return mIndex.search(mQueries[mQuery], 12f);
+	}
+}
@@ -0,0 +1,80 @@
+package com.dreamynomad.colorcam.benchmark;
+
+import com.dreamynomad.colorcam.JpegEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming JPEG compression of a whole image in the strips that the overlay writer uses, to
+ * compare against the platform encoder on the same image.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JpegEncoderBenchmark {
+
+	private static final int STRIP_HEIGHT = 256;
+
+	/**
+	 * Megapixels of a 4:3 image.
+	 */
+	@Param({"12", "48"})
+	public int mMegapixels;
+
+	private int mWidth;
+	private int mHeight;
+	private int[] mStrip;
+
+	@Setup
+	public void setUp() {
+		mHeight = (int) Math.sqrt(mMegapixels * 1000000 * 3 / 4.0);
+		mWidth = mHeight * 4 / 3;
+
+		// a gradient with some noise, which compresses like a photo
+		final Random random = new Random(42);
+		mStrip = new int[mWidth * STRIP_HEIGHT];
+
+		for (int y = 0; y < STRIP_HEIGHT; y++) {
+			for (int x = 0; x < mWidth; x++) {
+				final int noise = random.nextInt(24);
+				mStrip[y * mWidth + x] = 0xFF000000 |
+						((x * 255 / mWidth + noise) & 0xFF) << 16 |
+						((y + noise) & 0xFF) << 8 | (((x + y) / 30 + noise) & 0xFF);
+			}
+		}
+	}
+
+	@Benchmark
+	public void encode() throws IOException {
+		final JpegEncoder encoder = new JpegEncoder(new NullOutputStream(), mWidth, mHeight, 80);
+
+		for (int top = 0; top < mHeight; top += STRIP_HEIGHT) {
+			encoder.write(mStrip, Math.min(STRIP_HEIGHT, mHeight - top));
+		}
+
+		encoder.finish();
+	}
+
+	private static class NullOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.dreamynomad.colorcam.benchmark;
+
+import com.dreamynomad.colorcam.cache.PaletteLruCache;
+import com.dreamynomad.colorcam.palette.PackedPalette;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Get and put churn on the palette cache. A key space smaller than the cache mostly hits, and a
+ * larger one mostly misses and evicts, like scrolling through a large gallery.
+ * <p/>
+ * The bitmap cache and pool wrap {@link android.graphics.Bitmap}s, which cannot be created on
+ * the JVM, so they are not measured here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PaletteLruCacheBenchmark {
+
+	private static final int OPERATIONS = 1024;
+	private static final long DATE_MODIFIED = 1445126400L;
+
+	@Param({"2048", "16384"})
+	public int mKeySpace;
+
+	private final PaletteLruCache mCache = PaletteLruCache.getInstance();
+	private final long[] mIds = new long[OPERATIONS];
+	private PackedPalette mPalette;
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+
+		for (int i = 0; i < OPERATIONS; i++) {
+			mIds[i] = random.nextInt(mKeySpace);
+		}
+
+		final int[] colors = new int[6];
+		final int[] populations = new int[6];
+		for (int i = 0; i < colors.length; i++) {
+			colors[i] = 0xFF000000 | random.nextInt(0x1000000);
+			populations[i] = random.nextInt(10000);
+		}
+		mPalette = new PackedPalette(colors, populations, colors.length);
+
+		mCache.evictAll();
+		for (int i = 0; i < mKeySpace; i++) {
+			mCache.put(i, DATE_MODIFIED, mPalette);
+		}
+	}
+
+	@Benchmark
+	public int getOrPut() {
+		int hits = 0;
+
+		for (long id : mIds) {
+			if (mCache.get(id, DATE_MODIFIED) != null) {
+				hits++;
+			} else {
+				mCache.put(id, DATE_MODIFIED, mPalette);
+			}
+		}
+
+		return hits;
+	}
+
+	@Benchmark
+	public int putRemove() {
+		for (long id : mIds) {
+			mCache.put(id, DATE_MODIFIED, mPalette);
+		}
+
+		for (long id : mIds) {
+			mCache.remove(id);
+		}
+
+		return mCache.size();
+	}
+}
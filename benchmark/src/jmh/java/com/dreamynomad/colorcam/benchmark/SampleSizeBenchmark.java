@@ -0,0 +1,58 @@
+package com.dreamynomad.colorcam.benchmark;
+
+import com.dreamynomad.colorcam.decode.SampleSize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sample size calculation for a mix of camera, screenshot and thumbnail dimensions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SampleSizeBenchmark {
+
+	private static final int[][] DIMENSIONS = {
+			{8000, 6000}, {4032, 3024}, {3264, 2448}, {1920, 1080}, {1080, 1920},
+			{512, 384}, {96, 96}, {12000, 800},
+	};
+
+	private static final int COUNT = 256;
+
+	private final int[] mWidths = new int[COUNT];
+	private final int[] mHeights = new int[COUNT];
+	private final int[] mRequested = new int[COUNT];
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+
+		for (int i = 0; i < COUNT; i++) {
+			final int[] dimensions = DIMENSIONS[random.nextInt(DIMENSIONS.length)];
+			mWidths[i] = dimensions[0];
+			mHeights[i] = dimensions[1];
+			mRequested[i] = 96 << random.nextInt(5);
+		}
+	}
+
+	@Benchmark
+	public int calculate() {
+		int sum = 0;
+
+		for (int i = 0; i < COUNT; i++) {
+			sum += SampleSize.calculate(mWidths[i], mHeights[i], mRequested[i], mRequested[i],
+					2048);
+		}
+
+		return sum;
+	}
+}
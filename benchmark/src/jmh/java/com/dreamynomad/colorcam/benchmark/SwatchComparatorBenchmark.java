@@ -0,0 +1,90 @@
+package com.dreamynomad.colorcam.benchmark;
+
+import com.dreamynomad.colorcam.palette.PackedPalette;
+import com.dreamynomad.colorcam.palette.PaletteOrder;
+import com.dreamynomad.colorcam.palette.Swatch;
+import com.dreamynomad.colorcam.palette.SwatchComparator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting a palette by HSL, both with swatches whose HSL is already cached, and with new
+ * swatches as they come out of the quantizer, compared to sorting packed keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SwatchComparatorBenchmark {
+
+	@Param({"6", "16"})
+	public int mColorCount;
+
+	private final SwatchComparator mComparator = new SwatchComparator();
+
+	private int[] mColors;
+	private Swatch[] mSwatches;
+	private List<Swatch> mSwatchList;
+	private int[] mSortedColors;
+	private int[] mSortedPopulations;
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+
+		mColors = new int[mColorCount];
+		mSwatches = new Swatch[mColorCount];
+
+		for (int i = 0; i < mColorCount; i++) {
+			mColors[i] = 0xFF000000 | random.nextInt(0x1000000);
+			mSwatches[i] = new Swatch(mColors[i], 1 + random.nextInt(10000));
+		}
+
+		mSwatchList = new ArrayList<>(Arrays.asList(mSwatches));
+		mSortedColors = new int[mColorCount];
+		mSortedPopulations = new int[mColorCount];
+	}
+
+	@Benchmark
+	public Swatch[] sortCached() {
+		final Swatch[] swatches = mSwatches.clone();
+		Arrays.sort(swatches, mComparator);
+		return swatches;
+	}
+
+	@Benchmark
+	public Swatch[] sortNew() {
+		final Swatch[] swatches = new Swatch[mColorCount];
+
+		for (int i = 0; i < mColorCount; i++) {
+			swatches[i] = new Swatch(mColors[i], i);
+		}
+
+		Arrays.sort(swatches, mComparator);
+		return swatches;
+	}
+
+	@Benchmark
+	public PackedPalette sortPacked() {
+		return PaletteOrder.sort(mSwatchList);
+	}
+
+	@Benchmark
+	public int[] sortPackedInPlace() {
+		System.arraycopy(mColors, 0, mSortedColors, 0, mColorCount);
+		PaletteOrder.sort(mSortedColors, mSortedPopulations, mColorCount);
+		return mSortedColors;
+	}
+}